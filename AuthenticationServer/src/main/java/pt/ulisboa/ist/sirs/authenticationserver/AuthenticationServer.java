@@ -7,6 +7,8 @@ import pt.ulisboa.ist.sirs.authenticationserver.grpc.crypto.NamingServerCryptogr
 import pt.ulisboa.ist.sirs.authenticationserver.grpc.crypto.ServerCryptographicInterceptor;
 import pt.ulisboa.ist.sirs.authenticationserver.grpc.crypto.AuthenticationServerCryptographicManager;
 import pt.ulisboa.ist.sirs.cryptology.Base;
+import pt.ulisboa.ist.sirs.cryptology.HandshakeEngine;
+import pt.ulisboa.ist.sirs.utils.ServerExecutors;
 import pt.ulisboa.ist.sirs.utils.Utils;
 
 import java.io.*;
@@ -15,12 +17,18 @@ import java.security.cert.X509Certificate;
 import java.security.cert.CertificateFactory;
 import java.security.spec.PKCS8EncodedKeySpec;
 import java.util.List;
+import java.util.Optional;
 import java.util.Scanner;
+import java.util.concurrent.ExecutorService;
 
 public class AuthenticationServer {
   private final boolean debug;
   private final AuthenticationServerState state;
   private final Server server;
+  private final Optional<ExecutorService> executor;
+  private final HandshakeEngine handshakes;
+  private final AuthenticationServerCryptographicManager crypto;
+  private final NamingServerCryptographicManager namingCrypto;
 
   public AuthenticationServer(List<String> args, boolean debug) throws IOException {
     this.debug = debug;
@@ -29,8 +37,9 @@ public class AuthenticationServer {
     final int authenticationServerPort = Integer.parseInt(args.get(3));
     final ServerCryptographicInterceptor authInterceptor = new ServerCryptographicInterceptor();
     final ServerCryptographicInterceptor namingInterceptor = new ServerCryptographicInterceptor();
-    final AuthenticationServerCryptographicManager crypto = new AuthenticationServerCryptographicManager(authInterceptor);
-    final NamingServerCryptographicManager namingCrypto = new NamingServerCryptographicManager(namingInterceptor);
+    this.handshakes = HandshakeEngine.fromEnvironment(debug);
+    this.crypto = new AuthenticationServerCryptographicManager(authInterceptor, handshakes);
+    this.namingCrypto = new NamingServerCryptographicManager(namingInterceptor);
     NamingServerState namingState = new NamingServerState.NamingServerStateBuilder(
             namingCrypto, args.get(0), args.get(1), authenticationServerAddress, authenticationServerPort, debug
     ).build();
@@ -42,10 +51,18 @@ public class AuthenticationServer {
     final BindableService NamingServerService = new NamingServerImpl(namingState, namingCrypto, debug).getService();
 
     ServerCredentials tlsBuilder = TlsServerCredentials.create(new File(args.get(4)), new File(args.get(5)));
-    this.server = Grpc.newServerBuilderForPort(authenticationServerPort, tlsBuilder)
-        .addService(ServerInterceptors.intercept(AuthenticationServerService, authInterceptor))
-        .addService(ServerInterceptors.intercept(NamingServerService, namingInterceptor))
-        .build();
+    // Requests are parsed inside the interceptors' call context so the marshallers can tell which client sent them
+    final ServerBuilder<?> serverBuilder = Grpc.newServerBuilderForPort(authenticationServerPort, tlsBuilder)
+        .addService(ServerInterceptors.intercept(
+          ServerInterceptors.useInputStreamMessages(AuthenticationServerService.bindService()), authInterceptor))
+        .addService(ServerInterceptors.intercept(
+          ServerInterceptors.useInputStreamMessages(NamingServerService.bindService()), namingInterceptor));
+    // The authentication and naming services share this server, and so its executor
+    if (ServerExecutors.modeFromEnvironment() == ServerExecutors.Mode.VIRTUAL && !ServerExecutors.supportsVirtualThreads())
+      System.out.println("Server: Virtual threads are not available on this runtime, falling back to a fixed thread pool");
+    this.executor = ServerExecutors.fromEnvironment("authentication-server");
+    executor.ifPresent(serverBuilder::executor);
+    this.server = serverBuilder.build();
   }
 
   private void serverStartup() throws IOException {
@@ -70,6 +87,14 @@ public class AuthenticationServer {
     System.out.println("Shutting down.");
     state.delete();
     server.shutdownNow();
+    executor.ifPresent(ExecutorService::shutdownNow);
+    handshakes.close();
+    try {
+      crypto.close();
+      namingCrypto.close();
+    } catch (IOException e) {
+      System.out.println(e.getMessage());
+    }
   }
 
   private void blockUntilShutDown() throws InterruptedException {
@@ -11,13 +11,13 @@ import pt.ulisboa.ist.sirs.authenticationserver.dto.ServerIdentity;
 import pt.ulisboa.ist.sirs.authenticationserver.grpc.crypto.AbstractCryptographicAuthenticationServiceImpl;
 import pt.ulisboa.ist.sirs.authenticationserver.grpc.crypto.AuthenticationServerCryptographicManager;
 import pt.ulisboa.ist.sirs.contract.authenticationserver.AuthenticationServer.*;
-import pt.ulisboa.ist.sirs.contract.authenticationserver.AuthenticationServerServiceGrpc;
 import pt.ulisboa.ist.sirs.contract.authenticationserver.AuthenticationServerServiceGrpc.AuthenticationServerServiceImplBase;
 import pt.ulisboa.ist.sirs.authenticationserver.domain.AuthenticationServerState;
-import pt.ulisboa.ist.sirs.authenticationserver.dto.DiffieHellmanExchangeParameters;
+import pt.ulisboa.ist.sirs.cryptology.CipherSuite;
 
 import java.time.OffsetDateTime;
 import java.util.List;
+import java.util.concurrent.CompletionException;
 
 public final class AuthenticationServerImpl extends AuthenticationServerServiceImplBase {
   private abstract static class AuthenticationServiceImpl extends AbstractCryptographicAuthenticationServiceImpl implements BindableService {
@@ -56,17 +56,25 @@ public final class AuthenticationServerImpl extends AuthenticationServerServiceI
     DiffieHellmanExchangeRequest request, StreamObserver<DiffieHellmanExchangeResponse> responseObserver
   ) {
     try {
-      String client = crypto.getClientHash(AuthenticationServerServiceGrpc.getDiffieHellmanExchangeMethod().getFullMethodName());
+      String client = crypto.getClientHash();
+      CipherSuite cipherSuite = CipherSuite.forId(request.getCipherSuiteValue());
 
-      DiffieHellmanExchangeParameters params = state.diffieHellmanExchange(
-        request.getClientPublic().toByteArray(), client
-      );
-
-      responseObserver.onNext(DiffieHellmanExchangeResponse.newBuilder()
-        .setServerPublic(ByteString.copyFrom(params.publicKey()))
-        .setParameters(ByteString.copyFrom(params.parameters()))
-      .build());
-      responseObserver.onCompleted();
+      // Key agreement runs on the handshake engine, the response is sent from there
+      state.diffieHellmanExchange(request.getClientPublic().toByteArray(), client, cipherSuite)
+        .whenComplete((params, e) -> {
+          if (e != null) {
+            Throwable cause = e instanceof CompletionException && e.getCause() != null ? e.getCause() : e;
+            responseObserver.onError(Status.ABORTED.withDescription(cause.getMessage()).asRuntimeException());
+            return;
+          }
+          responseObserver.onNext(DiffieHellmanExchangeResponse.newBuilder()
+            .setServerPublic(ByteString.copyFrom(params.publicKey()))
+            .setParameters(ByteString.copyFrom(params.parameters()))
+            .setCipherSuiteValue(cipherSuite.getId())
+            .setTicketGrantingTicket(ByteString.copyFrom(params.ticketGrantingTicket()))
+          .build());
+          responseObserver.onCompleted();
+        });
     } catch (Exception e) {
       responseObserver.onError(Status.ABORTED.withDescription(e.getMessage()).asRuntimeException());
     }
@@ -98,7 +106,7 @@ public final class AuthenticationServerImpl extends AuthenticationServerServiceI
     try {
       if (isDebug())
         System.out.println("\tAuthenticationServerImpl: deserialize and parse request");
-      String client = crypto.getClientHash(AuthenticationServerServiceGrpc.getAuthenticateMethod().getFullMethodName());
+      String client = crypto.getClientHash();
       String source = request.getSource();
       String target = request.getTarget();
       OffsetDateTime timestamp = OffsetDateTime.parse(request.getTimeStamp());
@@ -13,9 +13,9 @@ import pt.ulisboa.ist.sirs.authenticationserver.exceptions.ServiceHasNoRegistere
 import pt.ulisboa.ist.sirs.authenticationserver.grpc.crypto.AbstractCryptographicNamingServiceImpl;
 import pt.ulisboa.ist.sirs.authenticationserver.grpc.crypto.NamingServerCryptographicManager;
 import pt.ulisboa.ist.sirs.contract.namingserver.NamingServer.*;
-import pt.ulisboa.ist.sirs.contract.namingserver.NamingServerServiceGrpc;
+import pt.ulisboa.ist.sirs.cryptology.CipherSuite;
 import pt.ulisboa.ist.sirs.contract.namingserver.NamingServerServiceGrpc.NamingServerServiceImplBase;
-import pt.ulisboa.ist.sirs.cryptology.Base;
+import pt.ulisboa.ist.sirs.cryptology.IdentityCache;
 import pt.ulisboa.ist.sirs.utils.Utils;
 import pt.ulisboa.ist.sirs.utils.exceptions.TamperedMessageException;
 
@@ -54,9 +54,7 @@ public final class NamingServerImpl extends NamingServerServiceImplBase {
   ) {
     try {
       responseObserver.onNext(InitiateEncryptedKeyExchangeResponse.newBuilder().setServerCert(
-      ByteString.copyFrom(
-        Utils.readBytesFromFile(Base.CryptographicCore.getCertPath())
-      )).build());
+      ByteString.copyFrom(IdentityCache.shared().ownCertificate())).build());
       responseObserver.onCompleted();
     } catch (Exception e) {
       if (debug) System.out.println(e.getMessage());
@@ -69,13 +67,15 @@ public final class NamingServerImpl extends NamingServerServiceImplBase {
     EncryptedKeyExchangeRequest request, StreamObserver<EncryptedKeyExchangeResponse> responseObserver
   ) {
     try {
-      String client = crypto.getClientHash(NamingServerServiceGrpc.getEncryptedKeyExchangeMethod().getFullMethodName());
+      String client = crypto.getClientHash();
 
       crypto.validateSession(request.getClientCert().toByteArray());
       KeyBundle keyBundle = crypto.getEphemeralBundle(request.getClientOps().toByteArray());
 
       DiffieHellmanExchangeParameters parameters = state.diffieHellmanExchange(
-        crypto.decryptWithEphemeral(keyBundle, request.getClientParams().toByteArray()), client
+        crypto.decryptWithEphemeral(keyBundle, request.getClientParams().toByteArray()),
+        client,
+        CipherSuite.forId(request.getCipherSuiteValue())
       );
 
       responseObserver.onNext(EncryptedKeyExchangeResponse.newBuilder().setServerParams(
@@ -96,8 +96,10 @@ public final class NamingServerImpl extends NamingServerServiceImplBase {
     EncryptedKeyExchangeChallengeRequest request, StreamObserver<EncryptedKeyExchangeChallengeResponse> responseObserver
   ) {
     try {
-      if (!crypto.checkNonce(request.getServerChallenge() - 1))
+      if (!crypto.checkNonce(request.getServerChallenge() - 1)) {
+        if (debug) System.out.println(crypto.getChallenges());
         throw new TamperedMessageException();
+      }
 
       responseObserver.onNext(
         EncryptedKeyExchangeChallengeResponse.newBuilder().setClientChallenge(request.getClientChallenge() +1).build()
@@ -112,7 +114,7 @@ public final class NamingServerImpl extends NamingServerServiceImplBase {
   @Override
   public void register(RegisterRequest request, StreamObserver<Ack> responseObserver) {
     try {
-      String client = crypto.getClientHash(NamingServerServiceGrpc.getRegisterMethod().getFullMethodName());
+      String client = crypto.getClientHash();
       if (crypto.checkServerCache(client))
         throw new RuntimeException("Please perform eke first.");
 
@@ -135,7 +137,7 @@ public final class NamingServerImpl extends NamingServerServiceImplBase {
   @Override
   public void lookup(LookupRequest request, StreamObserver<LookupResponse> responseObserver) {
     try {
-      String client = crypto.getClientHash(NamingServerServiceGrpc.getDeleteMethod().getFullMethodName());
+      String client = crypto.getClientHash();
       if (crypto.checkServerCache(client))
         throw new RuntimeException("Please perform eke first.");
 
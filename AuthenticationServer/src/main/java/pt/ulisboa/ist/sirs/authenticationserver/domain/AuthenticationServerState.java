@@ -7,9 +7,11 @@ import pt.ulisboa.ist.sirs.authenticationserver.dto.TargetServer;
 import pt.ulisboa.ist.sirs.authenticationserver.enums.Service;
 import pt.ulisboa.ist.sirs.authenticationserver.grpc.AuthenticationService;
 import pt.ulisboa.ist.sirs.authenticationserver.grpc.crypto.AuthenticationServerCryptographicManager;
+import pt.ulisboa.ist.sirs.cryptology.CipherSuite;
 
 import java.time.OffsetDateTime;
 import java.util.List;
+import java.util.concurrent.CompletableFuture;
 
 public class AuthenticationServerState {
 
@@ -73,14 +75,12 @@ public class AuthenticationServerState {
     return debug;
   }
 
-  public synchronized DiffieHellmanExchangeParameters diffieHellmanExchange(byte[] pubKeyEnc, String client) {
+  public CompletableFuture<DiffieHellmanExchangeParameters> diffieHellmanExchange(
+    byte[] pubKeyEnc, String client, CipherSuite cipherSuite
+  ) {
     if (isDebug())
       System.out.println("\t\tAuthenticationServerState: diffieHellman initiate\n");
-    try {
-      return service.diffieHellmanExchange(pubKeyEnc, client);
-    } catch (Exception e) {
-      throw new RuntimeException(e);
-    }
+    return service.diffieHellmanExchange(pubKeyEnc, client, cipherSuite);
   }
 
   public synchronized List<ServerIdentity> lookup(Service.Types service) {
@@ -9,6 +9,7 @@ import java.util.stream.Collectors;
 
 import pt.ulisboa.ist.sirs.authenticationserver.grpc.NamingService;
 import pt.ulisboa.ist.sirs.authenticationserver.grpc.crypto.NamingServerCryptographicManager;
+import pt.ulisboa.ist.sirs.cryptology.CipherSuite;
 
 import java.util.*;
 
@@ -80,11 +81,13 @@ public class NamingServerState {
     return services.get(service).containsKey(qualifier);
   }
 
-  public synchronized DiffieHellmanExchangeParameters diffieHellmanExchange(byte[] pubKeyEnc, String client) {
+  public synchronized DiffieHellmanExchangeParameters diffieHellmanExchange(
+    byte[] pubKeyEnc, String client, CipherSuite cipherSuite
+  ) {
     if (isDebug())
       System.out.println("\t\tAuthenticationServerState: diffieHellman initiate\n");
     try {
-      return namingService.diffieHellmanExchange(pubKeyEnc, client);
+      return namingService.diffieHellmanExchange(pubKeyEnc, client, cipherSuite);
     } catch (Exception e) {
       throw new RuntimeException(e);
     }
@@ -1,4 +1,7 @@
 package pt.ulisboa.ist.sirs.authenticationserver.dto;
 
-public record DiffieHellmanExchangeParameters(byte[] publicKey, byte[] parameters) {
+public record DiffieHellmanExchangeParameters(byte[] publicKey, byte[] parameters, byte[] ticketGrantingTicket) {
+  public DiffieHellmanExchangeParameters(byte[] publicKey, byte[] parameters) {
+    this(publicKey, parameters, new byte[0]);
+  }
 }
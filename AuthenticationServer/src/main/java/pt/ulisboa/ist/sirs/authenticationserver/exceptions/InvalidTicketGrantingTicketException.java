@@ -0,0 +1,7 @@
+package pt.ulisboa.ist.sirs.authenticationserver.exceptions;
+
+public class InvalidTicketGrantingTicketException extends RuntimeException {
+  public InvalidTicketGrantingTicketException() {
+    super("Invalid or expired ticket-granting ticket");
+  }
+}
@@ -0,0 +1,7 @@
+package pt.ulisboa.ist.sirs.authenticationserver.exceptions;
+
+public class NoClientKeysException extends RuntimeException {
+  public NoClientKeysException() {
+    super("No keys were exchanged with this client");
+  }
+}
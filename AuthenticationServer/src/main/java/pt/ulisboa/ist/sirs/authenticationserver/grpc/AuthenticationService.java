@@ -3,13 +3,15 @@ package pt.ulisboa.ist.sirs.authenticationserver.grpc;
 import pt.ulisboa.ist.sirs.authenticationserver.dto.AuthTicket;
 import pt.ulisboa.ist.sirs.authenticationserver.dto.DiffieHellmanExchangeParameters;
 import pt.ulisboa.ist.sirs.authenticationserver.grpc.crypto.AuthenticationServerCryptographicManager;
+import pt.ulisboa.ist.sirs.cryptology.CipherSuite;
 import pt.ulisboa.ist.sirs.cryptology.Operations;
 import pt.ulisboa.ist.sirs.utils.Utils;
-import pt.ulisboa.ist.sirs.utils.exceptions.ReplayAttackException;
+import pt.ulisboa.ist.sirs.utils.ReplayCache;
 
 import java.nio.ByteBuffer;
 import java.time.OffsetDateTime;
 import java.util.*;
+import java.util.concurrent.CompletableFuture;
 
 public final class AuthenticationService {
   public static class AuthenticationServerServiceBuilder {
@@ -47,7 +49,7 @@ public final class AuthenticationService {
   private final String service;
   private final String name;
   private final AuthenticationServerCryptographicManager crypto;
-  private final Map<String, List<OffsetDateTime>> timestamps = new HashMap<>();
+  private final ReplayCache replayCache = new ReplayCache();
 
   public AuthenticationService(AuthenticationServerServiceBuilder builder) {
     this.debug = builder.debug;
@@ -78,26 +80,14 @@ public final class AuthenticationService {
     return this.debug;
   }
 
-  private void addTimestamp(String client, OffsetDateTime timestamp) {
-    this.timestamps.get(client).add(timestamp);
+  public void checkForReplayAttack(String client, OffsetDateTime timestamp) {
+    replayCache.check(client, timestamp);
   }
 
-  private boolean oldTimestampString(String client, OffsetDateTime timestamp) {
-    if (this.timestamps.get(client) == null) {
-      this.timestamps.put(client, new ArrayList<>());
-      return false;
-    }
-    return this.timestamps.get(client).contains(timestamp);
-  }
-
-  public synchronized void checkForReplayAttack(String client, OffsetDateTime timestamp) {
-    if (oldTimestampString(client, timestamp))
-      throw new ReplayAttackException();
-    addTimestamp(client, timestamp);
-  }
-
-  public synchronized DiffieHellmanExchangeParameters diffieHellmanExchange(byte[] clientPubEnc, String client) throws Exception {
-    return crypto.diffieHellmanExchange(clientPubEnc, client);
+  public CompletableFuture<DiffieHellmanExchangeParameters> diffieHellmanExchange(
+    byte[] clientPubEnc, String client, CipherSuite cipherSuite
+  ) {
+    return crypto.diffieHellmanExchange(clientPubEnc, client, cipherSuite);
   }
 
   public synchronized AuthTicket authenticate(
@@ -2,10 +2,10 @@ package pt.ulisboa.ist.sirs.authenticationserver.grpc;
 
 import pt.ulisboa.ist.sirs.authenticationserver.dto.DiffieHellmanExchangeParameters;
 import pt.ulisboa.ist.sirs.authenticationserver.grpc.crypto.NamingServerCryptographicManager;
-import pt.ulisboa.ist.sirs.utils.exceptions.ReplayAttackException;
+import pt.ulisboa.ist.sirs.cryptology.CipherSuite;
+import pt.ulisboa.ist.sirs.utils.ReplayCache;
 
 import java.time.OffsetDateTime;
-import java.util.*;
 
 public final class NamingService {
   public static class NamingServerServiceBuilder {
@@ -42,7 +42,7 @@ public final class NamingService {
   private final Integer port;
   private final String service;
   private final String name;
-  private final Map<String, List<OffsetDateTime>> timestamps = new HashMap<>();
+  private final ReplayCache replayCache = new ReplayCache();
 
   public NamingService(NamingServerServiceBuilder builder) {
     this.crypto = builder.crypto;
@@ -73,25 +73,13 @@ public final class NamingService {
     return this.debug;
   }
 
-  private void addTimestamp(String client, OffsetDateTime timestamp) {
-    this.timestamps.get(client).add(timestamp);
+  public void checkForReplayAttack(String client, OffsetDateTime timestamp) {
+    replayCache.check(client, timestamp);
   }
 
-  private boolean oldTimestampString(String client, OffsetDateTime timestamp) {
-    if (this.timestamps.get(client) == null) {
-      this.timestamps.put(client, new ArrayList<>());
-      return false;
-    }
-    return this.timestamps.get(client).contains(timestamp);
-  }
-
-  public synchronized void checkForReplayAttack(String client, OffsetDateTime timestamp) {
-    if (oldTimestampString(client, timestamp))
-      throw new ReplayAttackException();
-    addTimestamp(client, timestamp);
-  }
-
-  public synchronized DiffieHellmanExchangeParameters diffieHellmanExchange(byte[] clientPubEnc, String client) throws Exception {
-    return crypto.diffieHellmanExchange(clientPubEnc, client);
+  public synchronized DiffieHellmanExchangeParameters diffieHellmanExchange(
+    byte[] clientPubEnc, String client, CipherSuite cipherSuite
+  ) throws Exception {
+    return crypto.diffieHellmanExchange(clientPubEnc, client, cipherSuite);
   }
 }
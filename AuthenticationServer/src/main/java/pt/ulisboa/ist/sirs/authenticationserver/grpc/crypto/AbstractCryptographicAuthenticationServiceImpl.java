@@ -3,48 +3,18 @@ package pt.ulisboa.ist.sirs.authenticationserver.grpc.crypto;
 import com.google.protobuf.Message;
 import io.grpc.MethodDescriptor;
 import io.grpc.ServerServiceDefinition;
-import io.grpc.Status;
-import io.grpc.StatusRuntimeException;
 import pt.ulisboa.ist.sirs.authenticationserver.AuthenticationServerImpl;
 import pt.ulisboa.ist.sirs.contract.authenticationserver.AuthenticationServer.*;
 import pt.ulisboa.ist.sirs.contract.authenticationserver.AuthenticationServerServiceGrpc;
-
-import java.io.ByteArrayInputStream;
-import java.io.IOException;
-import java.io.InputStream;
-import java.util.Arrays;
+import pt.ulisboa.ist.sirs.utils.ProtectedMarshaller;
 
 import static io.grpc.stub.ServerCalls.asyncUnaryCall;
 
 public abstract class AbstractCryptographicAuthenticationServiceImpl {
   public <T extends Message> MethodDescriptor.Marshaller<T> marshallerForAuthServer(
-    T message, String fullMethodName, AuthenticationServerCryptographicManager crypto
+    T message, AuthenticationServerCryptographicManager crypto
   ) {
-    return new MethodDescriptor.Marshaller<>() {
-      private final String methodName = fullMethodName;
-      @Override
-      public InputStream stream(T value) {
-        try {
-          return new ByteArrayInputStream(crypto.encryptByteArray(value.toByteArray(), methodName));
-        } catch (Exception e) {
-          throw new StatusRuntimeException(Status.INTERNAL.withDescription(Arrays.toString(e.getStackTrace())));
-        }
-      }
-      @Override
-      @SuppressWarnings("unchecked")
-      public T parse(InputStream inputStream) {
-        try {
-          System.out.println(methodName);
-          return (T) message.newBuilderForType().mergeFrom(
-            crypto.decryptByteArray(inputStream.readAllBytes(), methodName)
-          ).build();
-        } catch (IOException e) {
-          throw Status.INTERNAL.withDescription("Invalid protobuf byte sequence").withCause(e).asRuntimeException();
-        } catch (Exception e) {
-          throw new RuntimeException(e);
-        }
-      }
-    };
+    return new ProtectedMarshaller<>(message, crypto::encryptBuffer, crypto::decryptBuffer);
   }
   public final ServerServiceDefinition bindService(
     AuthenticationServerCryptographicManager crypto, AuthenticationServerImpl serverImpl
@@ -58,12 +28,10 @@ public abstract class AbstractCryptographicAuthenticationServiceImpl {
       AuthenticationServerServiceGrpc.getLookupMethod().toBuilder(
         marshallerForAuthServer(
           LookupRequest.getDefaultInstance(),
-          AuthenticationServerServiceGrpc.getLookupMethod().getFullMethodName(),
           crypto
         ),
         marshallerForAuthServer(
           LookupResponse.getDefaultInstance(),
-          AuthenticationServerServiceGrpc.getLookupMethod().getFullMethodName(),
           crypto
         )
     ).build();
@@ -71,12 +39,10 @@ public abstract class AbstractCryptographicAuthenticationServiceImpl {
       AuthenticationServerServiceGrpc.getAuthenticateMethod().toBuilder(
         marshallerForAuthServer(
           AuthenticateRequest.getDefaultInstance(),
-          AuthenticationServerServiceGrpc.getAuthenticateMethod().getFullMethodName(),
           crypto
         ),
         marshallerForAuthServer(
           AuthenticateResponse.getDefaultInstance(),
-          AuthenticationServerServiceGrpc.getAuthenticateMethod().getFullMethodName(),
           crypto
         )
     ).build();
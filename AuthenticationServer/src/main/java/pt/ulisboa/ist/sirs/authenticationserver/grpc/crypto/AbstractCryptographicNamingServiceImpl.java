@@ -8,7 +8,6 @@ import io.grpc.StatusRuntimeException;
 import pt.ulisboa.ist.sirs.authenticationserver.NamingServerImpl;
 import pt.ulisboa.ist.sirs.contract.namingserver.NamingServer.*;
 import pt.ulisboa.ist.sirs.contract.namingserver.NamingServerServiceGrpc;
-import pt.ulisboa.ist.sirs.utils.exceptions.TamperedMessageException;
 
 import java.io.ByteArrayInputStream;
 import java.io.IOException;
@@ -19,14 +18,13 @@ import static io.grpc.stub.ServerCalls.asyncUnaryCall;
 
 public abstract class AbstractCryptographicNamingServiceImpl {
   public <T extends Message> MethodDescriptor.Marshaller<T> marshallerForNamingServer(
-    T message, String fullMethodName, NamingServerCryptographicManager crypto
+    T message, NamingServerCryptographicManager crypto
   ) {
     return new MethodDescriptor.Marshaller<>() {
-      private final String methodName = fullMethodName;
       @Override
       public InputStream stream(T value) {
         try {
-          return new ByteArrayInputStream(crypto.encryptByteArray(value.toByteArray(), methodName));
+          return new ByteArrayInputStream(crypto.encryptByteArray(value.toByteArray()));
         } catch (Exception e) {
           throw new StatusRuntimeException(Status.INTERNAL.withDescription(Arrays.toString(e.getStackTrace())));
         }
@@ -36,10 +34,9 @@ public abstract class AbstractCryptographicNamingServiceImpl {
       @SuppressWarnings("unchecked")
       public T parse(InputStream inputStream) {
         try {
-          byte[] request = inputStream.readAllBytes();
-          if (crypto.checkByteArray(request, methodName))
-            throw new TamperedMessageException();
-          return (T) message.newBuilderForType().mergeFrom(crypto.decryptByteArray(request, methodName)).build();
+          return (T) message.newBuilderForType().mergeFrom(
+            crypto.verifyAndDecryptByteArray(inputStream.readAllBytes())
+          ).build();
         } catch (IOException e) {
           throw Status.INTERNAL.withDescription("Invalid protobuf byte sequence").withCause(e).asRuntimeException();
         } catch (Exception e) {
@@ -54,12 +51,10 @@ public abstract class AbstractCryptographicNamingServiceImpl {
       .toBuilder(
         marshallerForNamingServer(
           EncryptedKeyExchangeChallengeRequest.getDefaultInstance(),
-          NamingServerServiceGrpc.getEncryptedKeyExchangeChallengeMethod().getFullMethodName(),
           crypto
         ),
         marshallerForNamingServer(
           EncryptedKeyExchangeChallengeResponse.getDefaultInstance(),
-          NamingServerServiceGrpc.getEncryptedKeyExchangeChallengeMethod().getFullMethodName(),
           crypto
         )
     ).build();
@@ -68,12 +63,10 @@ public abstract class AbstractCryptographicNamingServiceImpl {
         .toBuilder(
           marshallerForNamingServer(
             RegisterRequest.getDefaultInstance(),
-            NamingServerServiceGrpc.getRegisterMethod().getFullMethodName(),
             crypto
           ),
           marshallerForNamingServer(
             Ack.getDefaultInstance(),
-            NamingServerServiceGrpc.getRegisterMethod().getFullMethodName(),
             crypto
           )
     ).build();
@@ -82,12 +75,10 @@ public abstract class AbstractCryptographicNamingServiceImpl {
         .toBuilder(
           marshallerForNamingServer(
             LookupRequest.getDefaultInstance(),
-            NamingServerServiceGrpc.getLookupMethod().getFullMethodName(),
             crypto
           ),
           marshallerForNamingServer(
             LookupResponse.getDefaultInstance(),
-            NamingServerServiceGrpc.getLookupMethod().getFullMethodName(),
             crypto
           )
     ).build();
@@ -96,12 +87,10 @@ public abstract class AbstractCryptographicNamingServiceImpl {
         .toBuilder(
           marshallerForNamingServer(
             DeleteRequest.getDefaultInstance(),
-            NamingServerServiceGrpc.getDeleteMethod().getFullMethodName(),
             crypto
           ),
           marshallerForNamingServer(
             Ack.getDefaultInstance(),
-            NamingServerServiceGrpc.getDeleteMethod().getFullMethodName(),
             crypto
           )
     ).build();
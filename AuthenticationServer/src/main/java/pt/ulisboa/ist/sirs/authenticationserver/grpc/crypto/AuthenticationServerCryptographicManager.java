@@ -1,19 +1,43 @@
 package pt.ulisboa.ist.sirs.authenticationserver.grpc.crypto;
 
 import pt.ulisboa.ist.sirs.authenticationserver.dto.DiffieHellmanExchangeParameters;
-import pt.ulisboa.ist.sirs.authenticationserver.exceptions.CannotInitializeClientCache;
-import pt.ulisboa.ist.sirs.cryptology.AbstractAuthServerService;
+import pt.ulisboa.ist.sirs.authenticationserver.exceptions.NoClientKeysException;
+import pt.ulisboa.ist.sirs.authenticationserver.grpc.crypto.MappedKeyStore.StoredKeys;
 import pt.ulisboa.ist.sirs.cryptology.Base;
+import pt.ulisboa.ist.sirs.cryptology.CipherSuite;
+import pt.ulisboa.ist.sirs.cryptology.HandshakeEngine;
 import pt.ulisboa.ist.sirs.cryptology.Operations;
-import pt.ulisboa.ist.sirs.dto.DiffieHellmanParams;
 
-import java.io.File;
+import javax.crypto.spec.SecretKeySpec;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.file.Path;
+import java.util.Optional;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.atomic.AtomicReference;
 
 public class AuthenticationServerCryptographicManager extends CryptographicCore implements Base.KeyManager {
   private final ServerCryptographicInterceptor crypto;
+  private final HandshakeEngine handshakes;
+  private final TicketGrantingTickets ticketGrantingTickets;
+  private final MappedKeyStore clientKeys;
 
-  public AuthenticationServerCryptographicManager(ServerCryptographicInterceptor crypto) {
+  public AuthenticationServerCryptographicManager(
+    ServerCryptographicInterceptor crypto, HandshakeEngine handshakes
+  ) throws IOException {
       this.crypto = crypto;
+      this.handshakes = handshakes;
+      this.ticketGrantingTickets = new TicketGrantingTickets(getTicketGrantingKeyPath());
+      this.clientKeys = new MappedKeyStore(Path.of(getKeyStorePath()));
+  }
+
+  public String getKeyStorePath() {
+      return CLIENT_CACHE_DIR + "clients.keystore";
+  }
+
+  public String getTicketGrantingKeyPath() {
+      return SERVER_CACHE_DIR + "tgs/symmetricKey";
   }
 
   // For now database symmetricKey and iv are distributed prior to application initialization, hence are static files
@@ -25,33 +49,51 @@ public class AuthenticationServerCryptographicManager extends CryptographicCore
       return SERVER_CACHE_DIR + server + "/iv";
   }
 
-  public String buildSymmetricKeyPath(String client) {
-    return CLIENT_CACHE_DIR + client + "/symmetricKey";
+  public String getClientHash() {
+    return crypto.getClientHash();
   }
 
-  public String buildIVPath(String client) {
-    return CLIENT_CACHE_DIR + client + "/iv";
+  // Channel keys and suite of the client's last exchange, kept across restarts
+  private StoredKeys getClientKeys(String client) {
+    return clientKeys.get(client).orElseThrow(NoClientKeysException::new);
   }
 
-  public String getClientHash(String methodName) {
-    return crypto.getClientHash(methodName);
+  // Callers presenting a ticket-granting ticket bring their channel keys along, no local state is needed
+  private Optional<TicketGrantingTickets.Credentials> getTicketGrantingCredentials() throws Exception {
+    Optional<byte[]> ticket = crypto.getTicketGrantingTicket();
+    return ticket.isEmpty() ? Optional.empty() : Optional.of(ticketGrantingTickets.verify(ticket.get()));
   }
 
-  public void initializeClientCache(String client) {
-    File clientDirectory = new File(CLIENT_CACHE_DIR + client + "/");
-    if (!clientDirectory.exists())
-      if (!clientDirectory.mkdirs())
-        throw new CannotInitializeClientCache(client);
+  public byte[] encryptByteArray(byte[] object) throws Exception {
+    Optional<TicketGrantingTickets.Credentials> credentials = getTicketGrantingCredentials();
+    if (credentials.isPresent())
+      return credentials.get().cipherSuite().encrypt(credentials.get().secretKey(), object, credentials.get().iv());
+    StoredKeys keys = getClientKeys(getClientHash());
+    return keys.cipherSuite().encrypt(keys.secretKey(), object, keys.iv());
   }
 
-  public byte[] encryptByteArray(byte[] object, String methodName) throws Exception {
-    String client = getClientHash(methodName);
-    return encryptUnsignedByteArray(object, buildSymmetricKeyPath(client), buildIVPath(client));
+  public byte[] decryptByteArray(byte[] object) throws Exception {
+    Optional<TicketGrantingTickets.Credentials> credentials = getTicketGrantingCredentials();
+    if (credentials.isPresent())
+      return credentials.get().cipherSuite().decrypt(credentials.get().secretKey(), object, credentials.get().iv());
+    StoredKeys keys = getClientKeys(getClientHash());
+    return keys.cipherSuite().decrypt(keys.secretKey(), object, keys.iv());
   }
 
-  public byte[] decryptByteArray(byte[] object, String methodName) throws Exception {
-    String client = getClientHash(methodName);
-    return decryptUnsignedByteArray(object, buildSymmetricKeyPath(client), buildIVPath(client));
+  public ByteBuffer encryptBuffer(ByteBuffer object) throws Exception {
+    Optional<TicketGrantingTickets.Credentials> credentials = getTicketGrantingCredentials();
+    if (credentials.isPresent())
+      return credentials.get().cipherSuite().encrypt(credentials.get().secretKey(), object, credentials.get().iv());
+    StoredKeys keys = getClientKeys(getClientHash());
+    return keys.cipherSuite().encrypt(keys.secretKey(), object, keys.iv());
+  }
+
+  public ByteBuffer decryptBuffer(ByteBuffer object) throws Exception {
+    Optional<TicketGrantingTickets.Credentials> credentials = getTicketGrantingCredentials();
+    if (credentials.isPresent())
+      return credentials.get().cipherSuite().decrypt(credentials.get().secretKey(), object, credentials.get().iv());
+    StoredKeys keys = getClientKeys(getClientHash());
+    return keys.cipherSuite().decrypt(keys.secretKey(), object, keys.iv());
   }
 
   public byte[] bundleTicket(String source, byte[] sessionKey, byte[] sessionIV, String target) throws Exception {
@@ -62,13 +104,28 @@ public class AuthenticationServerCryptographicManager extends CryptographicCore
     );
   }
 
-  public synchronized DiffieHellmanExchangeParameters diffieHellmanExchange(byte[] clientPubEnc, String client) throws Exception {
-    initializeClientCache(client);
-    DiffieHellmanParams params = AbstractAuthServerService.diffieHellmanExchange(
-      buildSymmetricKeyPath(client),
-      buildIVPath(client),
-      clientPubEnc
-    );
-    return new DiffieHellmanExchangeParameters(params.publicKey(), params.parameters());
+  public CompletableFuture<DiffieHellmanExchangeParameters> diffieHellmanExchange(
+    byte[] clientPubEnc, String client, CipherSuite cipherSuite
+  ) {
+    // Keys for the ticket are taken inside the client's lock, a concurrent handshake of the same client
+    // may replace the stored ones before the ticket is issued
+    AtomicReference<TicketGrantingTickets.Credentials> agreed = new AtomicReference<>();
+    return handshakes.exchange(client, clientPubEnc, cipherSuite, (secretKey, iv) -> {
+      clientKeys.put(client, secretKey, iv, cipherSuite);
+      agreed.set(new TicketGrantingTickets.Credentials(
+        new SecretKeySpec(secretKey, Base.SYMMETRIC_ALG), iv.clone(), cipherSuite
+      ));
+    }).thenApply(params -> {
+      try {
+        byte[] ticketGrantingTicket = ticketGrantingTickets.issue(agreed.get());
+        return new DiffieHellmanExchangeParameters(params.publicKey(), params.parameters(), ticketGrantingTicket);
+      } catch (Exception e) {
+        throw new CompletionException(e);
+      }
+    });
+  }
+
+  public void close() throws IOException {
+    clientKeys.close();
   }
 }
@@ -4,15 +4,19 @@ import pt.ulisboa.ist.sirs.authenticationserver.dto.DiffieHellmanExchangeParamet
 import pt.ulisboa.ist.sirs.authenticationserver.dto.KeyBundle;
 import pt.ulisboa.ist.sirs.cryptology.AbstractAuthServerService;
 import pt.ulisboa.ist.sirs.cryptology.Base;
+import pt.ulisboa.ist.sirs.cryptology.CipherSuite;
 import pt.ulisboa.ist.sirs.cryptology.Operations;
 import pt.ulisboa.ist.sirs.dto.DiffieHellmanParams;
 
 import javax.crypto.BadPaddingException;
 import javax.crypto.IllegalBlockSizeException;
 import javax.crypto.NoSuchPaddingException;
+import javax.crypto.SecretKey;
 import java.security.InvalidAlgorithmParameterException;
 import java.security.InvalidKeyException;
 import java.security.NoSuchAlgorithmException;
+import java.security.PrivateKey;
+import java.security.PublicKey;
 import java.util.Arrays;
 
 public class CryptographicCore implements Base.CryptographicCore {
@@ -38,37 +42,33 @@ public class CryptographicCore implements Base.CryptographicCore {
   }
 
   protected boolean checkByteArray(
-          byte[] message, String secretKeyPath, String publicKeyPath, String ivPath
+          byte[] message, SecretKey secretKey, PublicKey publicKey, byte[] iv
   ) throws Exception {
-    return Decrypter.check(
-      message, Base.readSecretKey(secretKeyPath), Base.readPublicKey(publicKeyPath), Base.readIv(ivPath)
-    );
+    return Decrypter.check(message, secretKey, publicKey, iv);
   }
 
-  protected static byte[] decryptByteArray(
-          byte[] message, String secretKeyPath, String ivPath
+  protected static byte[] verifyAndDecryptByteArray(
+          byte[] message, SecretKey secretKey, PublicKey publicKey, byte[] iv
   ) throws Exception {
-    return Decrypter.decryptByteArray(message, Base.readSecretKey(secretKeyPath), Base.readIv(ivPath));
+    return Decrypter.verifyAndDecryptByteArray(message, secretKey, publicKey, iv);
   }
 
-  protected static byte[] encryptByteArray(
-          byte[] message, String secretKeyPath, String privateKeyPath, String ivPath
+  protected static byte[] decryptByteArray(
+          byte[] message, SecretKey secretKey, byte[] iv
   ) throws Exception {
-    return Encrypter.encryptByteArray(
-      message, Base.readSecretKey(secretKeyPath), Base.readPrivateKey(privateKeyPath), Base.readIv(ivPath)
-    );
+    return Decrypter.decryptByteArray(message, secretKey, iv);
   }
 
-  protected static byte[] decryptUnsignedByteArray(
-          byte[] message, String secretKeyPath, String ivPath
+  protected static byte[] encryptByteArray(
+          byte[] message, SecretKey secretKey, PrivateKey privateKey, byte[] iv
   ) throws Exception {
-    return Operations.decryptData(Base.readSecretKey(secretKeyPath), message, Base.readIv(ivPath));
+    return Encrypter.encryptByteArray(message, secretKey, privateKey, iv);
   }
 
   protected static byte[] encryptUnsignedByteArray(
-          byte[] message, String secretKeyPath, String ivPath
+          byte[] message, SecretKey secretKey, byte[] iv
   ) throws Exception {
-    return Operations.encryptData(Base.readSecretKey(secretKeyPath), message, Base.readIv(ivPath));
+    return Operations.encryptData(secretKey, message, iv);
   }
 
   protected byte[] decryptWithEphemeral(
@@ -86,11 +86,9 @@ public class CryptographicCore implements Base.CryptographicCore {
   }
 
   public DiffieHellmanExchangeParameters diffieHellmanExchange(
-    byte[] clientPubEnc, String symmetricKeyPath, String ivPath
+    byte[] clientPubEnc, CipherSuite cipherSuite, AbstractAuthServerService.SessionKeySink sink
   ) throws Exception {
-    DiffieHellmanParams params = AbstractAuthServerService.diffieHellmanExchange(
-      symmetricKeyPath, ivPath, clientPubEnc
-    );
+    DiffieHellmanParams params = AbstractAuthServerService.diffieHellmanExchange(clientPubEnc, cipherSuite, sink);
     return new DiffieHellmanExchangeParameters(params.publicKey(), params.parameters());
   }
 }
\ No newline at end of file
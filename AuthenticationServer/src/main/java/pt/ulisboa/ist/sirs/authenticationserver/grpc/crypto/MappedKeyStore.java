@@ -0,0 +1,163 @@
+package pt.ulisboa.ist.sirs.authenticationserver.grpc.crypto;
+
+import pt.ulisboa.ist.sirs.cryptology.Base;
+import pt.ulisboa.ist.sirs.cryptology.CipherSuite;
+import pt.ulisboa.ist.sirs.cryptology.Operations;
+
+import javax.crypto.SecretKey;
+import javax.crypto.spec.SecretKeySpec;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.security.NoSuchAlgorithmException;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.zip.CRC32;
+
+// Client channel keys in one file of fixed size records, mapped into memory and indexed by client
+// Record: crc || state || key length || iv length || cipher suite || client digest || key || iv || padding
+// Readers only touch the in-memory index, writers update it and the record in place, restarts rebuild it from the file
+public final class MappedKeyStore implements AutoCloseable {
+  private static final int MAGIC = 0x424b5331; // "BKS1"
+  private static final int HEADER_SIZE = 16; // bytes
+  private static final int ID_SIZE = Base.HASH_SIZE; // bytes
+  private static final int KEY_CAPACITY = Base.SYMMETRIC_KEY_SIZE; // bytes
+  private static final int IV_CAPACITY = Base.IV_SIZE; // bytes
+  private static final int RECORD_SIZE = 96; // bytes
+  private static final int STATE_OFFSET = Integer.BYTES;
+  private static final int ID_OFFSET = STATE_OFFSET + 4;
+  private static final int KEY_OFFSET = ID_OFFSET + ID_SIZE;
+  private static final int IV_OFFSET = KEY_OFFSET + KEY_CAPACITY;
+  private static final byte USED = 1;
+  private static final int INITIAL_RECORDS = 1024;
+
+  public record StoredKeys(SecretKey secretKey, byte[] iv, CipherSuite cipherSuite) {}
+
+  private record Slot(int index, StoredKeys keys) {}
+
+  private final Map<ByteBuffer, Slot> index = new ConcurrentHashMap<>();
+  private final FileChannel channel;
+  private MappedByteBuffer records;
+  private int capacity;
+  private int used;
+
+  public MappedKeyStore(Path file) throws IOException {
+    if (file.getParent() != null)
+      Files.createDirectories(file.getParent());
+    this.channel = FileChannel.open(
+      file, StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE
+    );
+    long size = channel.size();
+    if (size == 0) {
+      map(INITIAL_RECORDS);
+      records.putInt(0, MAGIC).putInt(Integer.BYTES, RECORD_SIZE);
+    } else {
+      if (size < HEADER_SIZE || (size - HEADER_SIZE) % RECORD_SIZE != 0)
+        throw new IOException("Corrupted key store: " + file);
+      map((int) ((size - HEADER_SIZE) / RECORD_SIZE));
+      if (records.getInt(0) != MAGIC || records.getInt(Integer.BYTES) != RECORD_SIZE)
+        throw new IOException("Not a key store: " + file);
+      load();
+    }
+  }
+
+  public Optional<StoredKeys> get(String client) {
+    Slot slot = index.get(id(client));
+    return slot == null ? Optional.empty() : Optional.of(slot.keys());
+  }
+
+  public boolean contains(String client) {
+    return index.containsKey(id(client));
+  }
+
+  // A client that exchanges keys again overwrites its own record
+  public synchronized void put(String client, byte[] secretKey, byte[] iv, CipherSuite cipherSuite) throws IOException {
+    if (secretKey.length > KEY_CAPACITY || iv.length > IV_CAPACITY)
+      throw new IllegalArgumentException("Key material does not fit a key store record");
+    ByteBuffer id = id(client);
+    Slot previous = index.get(id);
+    int slot = previous != null ? previous.index() : nextSlot();
+    write(slot, id, secretKey, iv, cipherSuite);
+    index.put(id, new Slot(slot, new StoredKeys(
+      new SecretKeySpec(secretKey, Base.SYMMETRIC_ALG), iv.clone(), cipherSuite
+    )));
+  }
+
+  public int size() {
+    return index.size();
+  }
+
+  @Override
+  public synchronized void close() throws IOException {
+    records.force();
+    channel.close();
+  }
+
+  private int nextSlot() throws IOException {
+    if (used == capacity)
+      map(capacity * 2);
+    return used++;
+  }
+
+  private void write(int slot, ByteBuffer id, byte[] secretKey, byte[] iv, CipherSuite cipherSuite) {
+    ByteBuffer record = ByteBuffer.allocate(RECORD_SIZE);
+    record.position(STATE_OFFSET);
+    record.put(USED).put((byte) secretKey.length).put((byte) iv.length).put((byte) cipherSuite.getId());
+    record.put(id.duplicate()).put(KEY_OFFSET, secretKey).put(IV_OFFSET, iv);
+    record.putInt(0, checksum(record));
+    records.put(offset(slot), record.array());
+  }
+
+  private void load() {
+    for (int slot = 0; slot < capacity; slot++) {
+      byte[] record = new byte[RECORD_SIZE];
+      records.get(offset(slot), record);
+      ByteBuffer buffer = ByteBuffer.wrap(record);
+      if (buffer.get(STATE_OFFSET) != USED)
+        continue;
+      used = slot + 1;
+      // A record torn by a crash is dropped, its client simply exchanges keys again
+      if (buffer.getInt(0) != checksum(buffer))
+        continue;
+      int keyLength = buffer.get(STATE_OFFSET + 1);
+      int ivLength = buffer.get(STATE_OFFSET + 2);
+      CipherSuite cipherSuite = CipherSuite.forId(buffer.get(STATE_OFFSET + 3));
+      byte[] id = new byte[ID_SIZE];
+      byte[] secretKey = new byte[keyLength];
+      byte[] iv = new byte[ivLength];
+      buffer.get(ID_OFFSET, id).get(KEY_OFFSET, secretKey).get(IV_OFFSET, iv);
+      index.put(ByteBuffer.wrap(id), new Slot(slot, new StoredKeys(
+        new SecretKeySpec(secretKey, Base.SYMMETRIC_ALG), iv, cipherSuite
+      )));
+    }
+  }
+
+  // Growing the file remaps it whole, records already written keep their offsets
+  private void map(int records) throws IOException {
+    this.records = channel.map(FileChannel.MapMode.READ_WRITE, 0, HEADER_SIZE + (long) records * RECORD_SIZE);
+    this.capacity = records;
+  }
+
+  private static int offset(int slot) {
+    return HEADER_SIZE + slot * RECORD_SIZE;
+  }
+
+  private static int checksum(ByteBuffer record) {
+    CRC32 crc = new CRC32();
+    crc.update(record.array(), STATE_OFFSET, RECORD_SIZE - STATE_OFFSET);
+    return (int) crc.getValue();
+  }
+
+  private static ByteBuffer id(String client) {
+    try {
+      return ByteBuffer.wrap(Operations.hash(client.getBytes()));
+    } catch (NoSuchAlgorithmException e) {
+      throw new IllegalStateException(e);
+    }
+  }
+}
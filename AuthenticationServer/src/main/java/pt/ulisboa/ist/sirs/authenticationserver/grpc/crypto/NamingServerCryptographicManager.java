@@ -3,30 +3,43 @@ package pt.ulisboa.ist.sirs.authenticationserver.grpc.crypto;
 import pt.ulisboa.ist.sirs.authenticationserver.dto.DiffieHellmanExchangeParameters;
 import pt.ulisboa.ist.sirs.authenticationserver.dto.KeyBundle;
 import pt.ulisboa.ist.sirs.authenticationserver.exceptions.CannotInitializeClientCache;
-import pt.ulisboa.ist.sirs.contract.namingserver.NamingServerServiceGrpc;
+import pt.ulisboa.ist.sirs.authenticationserver.exceptions.NoClientKeysException;
+import pt.ulisboa.ist.sirs.authenticationserver.grpc.crypto.MappedKeyStore.StoredKeys;
+import pt.ulisboa.ist.sirs.cryptology.Base;
+import pt.ulisboa.ist.sirs.cryptology.CipherSuite;
+import pt.ulisboa.ist.sirs.cryptology.IdentityCache;
+import pt.ulisboa.ist.sirs.utils.ChallengeRegistry;
 import pt.ulisboa.ist.sirs.utils.Utils;
 
 import javax.crypto.BadPaddingException;
 import javax.crypto.IllegalBlockSizeException;
 import javax.crypto.NoSuchPaddingException;
-import java.io.ByteArrayInputStream;
 import java.io.File;
+import java.io.IOException;
+import java.nio.file.Path;
 import java.security.InvalidAlgorithmParameterException;
 import java.security.InvalidKeyException;
 import java.security.NoSuchAlgorithmException;
+import java.security.PrivateKey;
+import java.security.PublicKey;
 import java.security.cert.CertificateException;
-import java.security.cert.CertificateFactory;
-import java.security.cert.X509Certificate;
-import java.util.HashMap;
 import java.util.Map;
-import java.util.Random;
+import java.util.concurrent.ConcurrentHashMap;
 
 public class NamingServerCryptographicManager extends CryptographicCore {
   private final ServerCryptographicInterceptor crypto;
-  private final Map<String, Long> nonces = new HashMap<>();
+  private final ChallengeRegistry challenges = new ChallengeRegistry();
+  private final Map<String, PublicKey> clientKeys = new ConcurrentHashMap<>();
+  private final MappedKeyStore sessionKeys;
+  private volatile PrivateKey privateKey;
 
-  public NamingServerCryptographicManager(ServerCryptographicInterceptor crypto) {
+  public NamingServerCryptographicManager(ServerCryptographicInterceptor crypto) throws IOException {
       this.crypto = crypto;
+      this.sessionKeys = new MappedKeyStore(Path.of(getKeyStorePath()));
+  }
+
+  public String getKeyStorePath() {
+      return SERVER_CACHE_DIR + "clients.keystore";
   }
 
   @SuppressWarnings("all")
@@ -38,42 +51,28 @@ public class NamingServerCryptographicManager extends CryptographicCore {
       return super.getPrivateKeyPath();
   }
 
-  public String buildSymmetricKeyPath(String client) {
-      return SERVER_CACHE_DIR + client + "/symmetricKey";
-  }
-
-  public String buildIVPath(String client) {
-      return SERVER_CACHE_DIR + client + "/iv";
-  }
-
   public String buildPublicKeyPath(String client) {
       return SERVER_CACHE_DIR + client + "/publicKey";
   }
 
-  public String getClientHash(String methodName) {
-    return crypto.getClientHash(methodName);
+  public String getClientHash() {
+    return crypto.getClientHash();
   }
 
   public boolean checkServerCache(String client) {
-    File clientDirectory = new File(SERVER_CACHE_DIR + client + "/");
-    return !clientDirectory.exists();
+    return !sessionKeys.contains(client);
   }
 
   public long initializeNonce() {
-    String client = getClientHash(NamingServerServiceGrpc.getEncryptedKeyExchangeMethod().getFullMethodName());
-    long random = (new Random()).nextLong();
-    nonces.put(client, random);
-    return random;
+    return challenges.issue(getClientHash());
   }
 
   public boolean checkNonce(Long nonce) {
-    String client = getClientHash(NamingServerServiceGrpc.getEncryptedKeyExchangeChallengeMethod().getFullMethodName());
-    boolean result = false;
-    if (nonces.containsKey(client)) {
-      result = nonces.get(client).equals(nonce);
-      nonces.remove(client);
-    }
-    return result;
+    return nonce != null && challenges.answer(getClientHash(), nonce);
+  }
+
+  public ChallengeRegistry getChallenges() {
+    return challenges;
   }
 
   private void initializeClientDir(String client) {
@@ -84,29 +83,54 @@ public class NamingServerCryptographicManager extends CryptographicCore {
   }
 
   public void validateSession(byte[] clientCert) throws CertificateException {
-    String client = getClientHash(NamingServerServiceGrpc.getEncryptedKeyExchangeMethod().getFullMethodName());
-    CertificateFactory certGen = CertificateFactory.getInstance("X.509");
-    X509Certificate cert = (X509Certificate) certGen.generateCertificate(
-            new ByteArrayInputStream(clientCert)
-    );
-    cert.checkValidity();
+    String client = getClientHash();
+    PublicKey clientKey = IdentityCache.shared().peerKey(clientCert);
     initializeClientDir(client);
-    Utils.writeBytesToFile(cert.getPublicKey().getEncoded(), buildPublicKeyPath(client));
+    Utils.writeBytesToFile(clientKey.getEncoded(), buildPublicKeyPath(client));
+    clientKeys.put(client, clientKey);
+  }
+
+  // The key file only outlives the process, every message after the handshake is verified from memory
+  private PublicKey getClientKey(String client) throws Exception {
+    PublicKey clientKey = clientKeys.get(client);
+    if (clientKey == null) {
+      clientKey = Base.readPublicKey(buildPublicKeyPath(client));
+      clientKeys.put(client, clientKey);
+    }
+    return clientKey;
+  }
+
+  private StoredKeys getSessionKeys(String client) {
+    return sessionKeys.get(client).orElseThrow(NoClientKeysException::new);
+  }
+
+  private PrivateKey getPrivateKey() throws Exception {
+    PrivateKey key = privateKey;
+    if (key == null)
+      privateKey = key = Base.readPrivateKey(getPrivateKeyPath());
+    return key;
   }
 
-  public byte[] encryptByteArray(byte[] object, String methodName) throws Exception {
-    String client = getClientHash(methodName);
-    return encryptByteArray(object, buildSymmetricKeyPath(client), getPrivateKeyPath(), buildIVPath(client));
+  public byte[] encryptByteArray(byte[] object) throws Exception {
+    StoredKeys keys = getSessionKeys(getClientHash());
+    return encryptByteArray(object, keys.secretKey(), getPrivateKey(), keys.iv());
   }
 
-  public boolean checkByteArray(byte[] object, String methodName) throws Exception {
-    String client = getClientHash(methodName);
-    return !checkByteArray(object, buildSymmetricKeyPath(client), buildPublicKeyPath(client), buildIVPath(client));
+  public boolean checkByteArray(byte[] object) throws Exception {
+    String client = getClientHash();
+    StoredKeys keys = getSessionKeys(client);
+    return !checkByteArray(object, keys.secretKey(), getClientKey(client), keys.iv());
   }
 
-  public byte[] decryptByteArray(byte[] object, String methodName) throws Exception {
-    String client = getClientHash(methodName);
-    return decryptByteArray(object, buildSymmetricKeyPath(client), buildIVPath(client));
+  public byte[] verifyAndDecryptByteArray(byte[] object) throws Exception {
+    String client = getClientHash();
+    StoredKeys keys = getSessionKeys(client);
+    return verifyAndDecryptByteArray(object, keys.secretKey(), getClientKey(client), keys.iv());
+  }
+
+  public byte[] decryptByteArray(byte[] object) throws Exception {
+    StoredKeys keys = getSessionKeys(getClientHash());
+    return decryptByteArray(object, keys.secretKey(), keys.iv());
   }
 
   public KeyBundle getEphemeralBundle(byte[] bundle) throws Exception {
@@ -114,7 +138,8 @@ public class NamingServerCryptographicManager extends CryptographicCore {
   }
 
   public byte[] encryptWithSession(byte[] message, String client) throws Exception {
-    return encryptUnsignedByteArray(message, buildSymmetricKeyPath(client), buildIVPath(client));
+    StoredKeys keys = getSessionKeys(client);
+    return encryptUnsignedByteArray(message, keys.secretKey(), keys.iv());
   }
 
   public byte[] encryptWithEphemeral(
@@ -135,8 +160,16 @@ public class NamingServerCryptographicManager extends CryptographicCore {
     return super.bundleEKEParams(params, publicKeySpecs);
   }
 
-  public DiffieHellmanExchangeParameters diffieHellmanExchange(byte[] clientPubEnc, String client) throws Exception {
-    initializeClientDir(client);
-    return super.diffieHellmanExchange(clientPubEnc, buildSymmetricKeyPath(client), buildIVPath(client));
+  // Servers authenticate with their certificates, so only the key agreement follows the suite
+  public DiffieHellmanExchangeParameters diffieHellmanExchange(
+    byte[] clientPubEnc, String client, CipherSuite cipherSuite
+  ) throws Exception {
+    return super.diffieHellmanExchange(
+      clientPubEnc, cipherSuite, (secretKey, iv) -> sessionKeys.put(client, secretKey, iv, cipherSuite)
+    );
+  }
+
+  public void close() throws IOException {
+    sessionKeys.close();
   }
 }
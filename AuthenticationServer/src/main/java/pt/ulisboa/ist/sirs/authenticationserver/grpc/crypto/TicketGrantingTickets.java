@@ -0,0 +1,71 @@
+package pt.ulisboa.ist.sirs.authenticationserver.grpc.crypto;
+
+import pt.ulisboa.ist.sirs.authenticationserver.exceptions.InvalidTicketGrantingTicketException;
+import pt.ulisboa.ist.sirs.cryptology.Base;
+import pt.ulisboa.ist.sirs.cryptology.CipherSuite;
+import pt.ulisboa.ist.sirs.cryptology.SealedRecord;
+import pt.ulisboa.ist.sirs.utils.Utils;
+import pt.ulisboa.ist.sirs.utils.exceptions.TamperedMessageException;
+
+import javax.crypto.SecretKey;
+import javax.crypto.spec.SecretKeySpec;
+import java.io.EOFException;
+import java.io.File;
+import java.io.IOException;
+import java.time.Clock;
+import java.time.Duration;
+
+public final class TicketGrantingTickets {
+  public static final Duration DEFAULT_LIFETIME = Duration.ofHours(10);
+
+  public record Credentials(SecretKey secretKey, byte[] iv, CipherSuite cipherSuite) {}
+
+  private final SecretKey ticketKey;
+  private final Clock clock;
+  private final long lifetime;
+
+  public TicketGrantingTickets(String keyPath) throws IOException {
+    this(loadKey(keyPath), DEFAULT_LIFETIME, Clock.systemUTC());
+  }
+
+  public TicketGrantingTickets(SecretKey ticketKey, Duration lifetime, Clock clock) {
+    if (lifetime.isNegative() || lifetime.isZero())
+      throw new IllegalArgumentException("Ticket-granting tickets need a positive lifetime");
+    this.ticketKey = ticketKey;
+    this.lifetime = lifetime.toMillis();
+    this.clock = clock;
+  }
+
+  // Like the database keys, the ticket-granting key is distributed to every instance before startup
+  // An instance generating its own would issue tickets no other instance can verify, so it refuses to start
+  private static SecretKey loadKey(String keyPath) throws IOException {
+    if (!new File(keyPath).exists())
+      throw new IOException("Ticket-granting key was not provisioned at " + keyPath);
+    byte[] key = Utils.readBytesFromFile(keyPath);
+    if (key.length != Base.SYMMETRIC_KEY_SIZE)
+      throw new IOException("Ticket-granting key at " + keyPath + " is not a " + Base.SYMMETRIC_KEY_SIZE + " byte key");
+    return new SecretKeySpec(key, Base.SYMMETRIC_ALG);
+  }
+
+  public byte[] issue(Credentials credentials) throws Exception {
+    return SealedRecord.seal(ticketKey, clock.millis() + lifetime, out -> {
+      out.writeInt(credentials.cipherSuite().getId());
+      SealedRecord.writeField(out, credentials.secretKey().getEncoded());
+      SealedRecord.writeField(out, credentials.iv());
+    });
+  }
+
+  // Needs nothing but the ticket-granting key, so any instance can serve a client another instance keyed
+  public Credentials verify(byte[] ticket) throws Exception {
+    try {
+      return SealedRecord.unseal(ticketKey, ticket, clock.millis(), (expiresAt, in) -> {
+        CipherSuite cipherSuite = CipherSuite.forId(in.readInt());
+        return new Credentials(
+          new SecretKeySpec(SealedRecord.readField(in), Base.SYMMETRIC_ALG), SealedRecord.readField(in), cipherSuite
+        );
+      }).orElseThrow(InvalidTicketGrantingTicketException::new);
+    } catch (TamperedMessageException | EOFException e) {
+      throw new InvalidTicketGrantingTicketException();
+    }
+  }
+}
@@ -0,0 +1,120 @@
+package pt.ulisboa.ist.sirs.benchmarks;
+
+import org.openjdk.jmh.annotations.*;
+import pt.ulisboa.ist.sirs.cryptology.*;
+import pt.ulisboa.ist.sirs.dto.DiffieHellmanParams;
+import pt.ulisboa.ist.sirs.dto.EKEParams;
+import pt.ulisboa.ist.sirs.utils.Utils;
+
+import javax.crypto.SecretKey;
+import javax.crypto.spec.SecretKeySpec;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.security.KeyPair;
+import java.security.PrivateKey;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Stream;
+
+// Both sides of each handshake run in process, the server half is what the authentication server does per request
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class HandshakeBenchmark {
+  @Param({"RSA_DH_AES_CBC", "X25519_ED25519_AES_GCM"})
+  private CipherSuite cipherSuite;
+
+  private Path directory;
+  private String serverPublicKeyPath;
+  private PrivateKey serverPrivateKey;
+  // Session key and IV the server half agreed on last, kept in memory as the authentication server does
+  private byte[] serverSecretKey;
+  private byte[] serverIv;
+
+  private static final class Client implements Base.AuthClient, Base.EKEClientManager {
+    private final String publicKeyPath;
+    private byte[] symmetricKey;
+
+    private Client(String publicKeyPath) {
+      this.publicKeyPath = publicKeyPath;
+    }
+
+    @Override
+    public void initializeAuth(byte[] symmetricKey, byte[] iv, CipherSuite cipherSuite) {
+      this.symmetricKey = symmetricKey;
+    }
+
+    @Override
+    public String buildPublicKeyPath() {
+      return publicKeyPath;
+    }
+
+    @Override
+    public void initializeSession(byte[] symmetricKey, byte[] iv) {
+      this.symmetricKey = symmetricKey;
+    }
+  }
+
+  @Setup(Level.Trial)
+  public void setup() throws Exception {
+    directory = Files.createTempDirectory("handshake");
+    // Ephemeral key bundles are always sealed under the server's RSA key
+    KeyPair serverKeys = CipherSuite.RSA_DH_AES_CBC.generateSigningKeyPair();
+    serverPublicKeyPath = Files.write(directory.resolve("publicKey"), serverKeys.getPublic().getEncoded()).toString();
+    serverPrivateKey = serverKeys.getPrivate();
+  }
+
+  @TearDown(Level.Trial)
+  public void tearDown() throws IOException {
+    try (Stream<Path> files = Files.walk(directory)) {
+      for (Path file : files.sorted(Comparator.reverseOrder()).toList())
+        Files.delete(file);
+    }
+  }
+
+  @Benchmark
+  public byte[] diffieHellman() throws Exception {
+    Client client = new Client(serverPublicKeyPath);
+    DiffieHellmanClient diffieHellman = new DiffieHellmanClient(client, cipherSuite);
+    DiffieHellmanParams params = AbstractAuthServerService.diffieHellmanExchange(
+      diffieHellman.diffieHellmanInitialize(), cipherSuite, this::storeSession
+    );
+    diffieHellman.diffieHellmanFinish(params.publicKey(), params.parameters());
+    return client.symmetricKey;
+  }
+
+  @Benchmark
+  public long encryptedKeyExchange() throws Exception {
+    Client client = new Client(serverPublicKeyPath);
+    EKEClient eke = new EKEClient(client, cipherSuite);
+    EKEParams request = eke.encryptedKeyExchange();
+
+    // Server side, as the naming server answers it
+    byte[] keyIVConcat = Operations.decryptDataAsymmetric(serverPrivateKey, request.publicKeySpecs());
+    SecretKey ephemeralKey = new SecretKeySpec(keyIVConcat, 0, Base.SYMMETRIC_KEY_SIZE, Base.SYMMETRIC_ALG);
+    byte[] ephemeralIV = Arrays.copyOfRange(keyIVConcat, Base.SYMMETRIC_KEY_SIZE, keyIVConcat.length);
+    DiffieHellmanParams params = AbstractAuthServerService.diffieHellmanExchange(
+      Operations.decryptData(ephemeralKey, request.params(), ephemeralIV), cipherSuite, this::storeSession
+    );
+    byte[] serverParams = Operations.encryptData(
+      ephemeralKey, Base.KeyManager.bundleParams(params.parameters(), params.publicKey()), ephemeralIV
+    );
+    byte[] challenge = Operations.encryptData(
+      new SecretKeySpec(serverSecretKey, Base.SYMMETRIC_ALG),
+      Utils.longToByteArray(Base.generateRandom(Long.MAX_VALUE)),
+      serverIv
+    );
+
+    return eke.finalize(serverParams, challenge);
+  }
+
+  private void storeSession(byte[] secretKey, byte[] iv) {
+    this.serverSecretKey = secretKey;
+    this.serverIv = iv;
+  }
+}
@@ -0,0 +1,66 @@
+package pt.ulisboa.ist.sirs.benchmarks;
+
+import org.openjdk.jmh.annotations.*;
+import pt.ulisboa.ist.sirs.cryptology.Base;
+import pt.ulisboa.ist.sirs.cryptology.CipherSuite;
+import pt.ulisboa.ist.sirs.cryptology.Operations;
+
+import javax.crypto.SecretKey;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.security.KeyPair;
+import java.security.PrivateKey;
+import java.security.PublicKey;
+import java.util.Comparator;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Stream;
+
+// Every request handler reads its keys from disk, this is the cost paid per call
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class KeyStorageBenchmark {
+  @Param({"RSA_DH_AES_CBC", "X25519_ED25519_AES_GCM"})
+  private CipherSuite cipherSuite;
+
+  private Path directory;
+  private String secretKeyPath;
+  private String publicKeyPath;
+  private String privateKeyPath;
+
+  @Setup(Level.Trial)
+  public void setup() throws Exception {
+    directory = Files.createTempDirectory("key-storage");
+    KeyPair signingKeys = cipherSuite.generateSigningKeyPair();
+    secretKeyPath = Files.write(directory.resolve("symmetricKey"), Operations.generateSessionKey()).toString();
+    publicKeyPath = Files.write(directory.resolve("publicKey"), signingKeys.getPublic().getEncoded()).toString();
+    privateKeyPath = Files.write(directory.resolve("privateKey"), signingKeys.getPrivate().getEncoded()).toString();
+  }
+
+  @TearDown(Level.Trial)
+  public void tearDown() throws IOException {
+    try (Stream<Path> files = Files.walk(directory)) {
+      for (Path file : files.sorted(Comparator.reverseOrder()).toList())
+        Files.delete(file);
+    }
+  }
+
+  @Benchmark
+  public SecretKey readSecretKey() throws Exception {
+    return Base.readSecretKey(secretKeyPath);
+  }
+
+  @Benchmark
+  public PublicKey readPublicKey() throws Exception {
+    return Base.readPublicKey(publicKeyPath);
+  }
+
+  @Benchmark
+  public PrivateKey readPrivateKey() throws Exception {
+    return Base.readPrivateKey(privateKeyPath);
+  }
+}
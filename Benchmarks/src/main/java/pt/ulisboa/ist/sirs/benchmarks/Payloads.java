@@ -0,0 +1,28 @@
+package pt.ulisboa.ist.sirs.benchmarks;
+
+import pt.ulisboa.ist.sirs.cryptology.Base;
+import pt.ulisboa.ist.sirs.cryptology.Operations;
+
+import javax.crypto.SecretKey;
+import javax.crypto.spec.SecretKeySpec;
+import java.security.SecureRandom;
+
+final class Payloads {
+  private static final SecureRandom RANDOM = new SecureRandom();
+
+  private Payloads() {}
+
+  static byte[] random(int size) {
+    byte[] payload = new byte[size];
+    RANDOM.nextBytes(payload);
+    return payload;
+  }
+
+  static SecretKey secretKey() {
+    return new SecretKeySpec(Operations.generateSessionKey(), Base.SYMMETRIC_ALG);
+  }
+
+  static byte[] iv() {
+    return random(Base.IV_SIZE);
+  }
+}
@@ -0,0 +1,75 @@
+package pt.ulisboa.ist.sirs.benchmarks;
+
+import org.openjdk.jmh.annotations.*;
+import pt.ulisboa.ist.sirs.cryptology.Base;
+import pt.ulisboa.ist.sirs.cryptology.CipherSuite;
+import pt.ulisboa.ist.sirs.cryptology.Operations;
+import pt.ulisboa.ist.sirs.cryptology.Security;
+
+import javax.crypto.SecretKey;
+import java.security.KeyPair;
+import java.util.concurrent.TimeUnit;
+
+// Signed and MAC protected documents side by side, the suite picks the signing key
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class SecurityBenchmark {
+  @Param({"64", "1024", "16384", "1048576"})
+  private int payloadSize;
+
+  @Param({"RSA_DH_AES_CBC", "X25519_ED25519_AES_GCM"})
+  private CipherSuite cipherSuite;
+
+  private SecretKey secretKey;
+  private SecretKey macKey;
+  private KeyPair signingKeys;
+  private byte[] iv;
+  private byte[] message;
+  private byte[] cryptogram;
+  private byte[] macCryptogram;
+
+  @Setup(Level.Trial)
+  public void setup() throws Exception {
+    secretKey = Payloads.secretKey();
+    macKey = Operations.deriveMacKey(secretKey, Base.SESSION_MAC_CLIENT_LABEL);
+    signingKeys = cipherSuite.generateSigningKeyPair();
+    iv = Payloads.iv();
+    message = Payloads.random(payloadSize);
+    cryptogram = Security.protect(message, secretKey, signingKeys.getPrivate(), iv);
+    macCryptogram = Security.protectWithMac(message, secretKey, macKey, iv);
+  }
+
+  @Benchmark
+  public byte[] protect() throws Exception {
+    return Security.protect(message, secretKey, signingKeys.getPrivate(), iv);
+  }
+
+  @Benchmark
+  public boolean check() throws Exception {
+    return Security.check(cryptogram, secretKey, signingKeys.getPublic(), iv);
+  }
+
+  @Benchmark
+  public byte[] unprotect() throws Exception {
+    return Security.unprotect(cryptogram, secretKey, iv);
+  }
+
+  @Benchmark
+  public byte[] verifyAndUnprotect() throws Exception {
+    return Security.verifyAndUnprotect(cryptogram, secretKey, signingKeys.getPublic(), iv);
+  }
+
+  @Benchmark
+  public byte[] protectWithMac() throws Exception {
+    return Security.protectWithMac(message, secretKey, macKey, iv);
+  }
+
+  @Benchmark
+  public byte[] unprotectWithMac() throws Exception {
+    return Security.unprotectWithMac(macCryptogram, secretKey, macKey, iv);
+  }
+}
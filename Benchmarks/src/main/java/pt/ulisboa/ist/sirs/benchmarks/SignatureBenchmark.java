@@ -0,0 +1,43 @@
+package pt.ulisboa.ist.sirs.benchmarks;
+
+import org.openjdk.jmh.annotations.*;
+import pt.ulisboa.ist.sirs.cryptology.CipherSuite;
+import pt.ulisboa.ist.sirs.cryptology.Operations;
+
+import java.security.KeyPair;
+import java.util.concurrent.TimeUnit;
+
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class SignatureBenchmark {
+  @Param({"64", "16384"})
+  private int payloadSize;
+
+  @Param({"RSA_DH_AES_CBC", "X25519_ED25519_AES_GCM"})
+  private CipherSuite cipherSuite;
+
+  private KeyPair signingKeys;
+  private byte[] message;
+  private byte[] signature;
+
+  @Setup(Level.Trial)
+  public void setup() throws Exception {
+    signingKeys = cipherSuite.generateSigningKeyPair();
+    message = Payloads.random(payloadSize);
+    signature = Operations.messageSignature(signingKeys.getPrivate(), message);
+  }
+
+  @Benchmark
+  public byte[] messageSignature() throws Exception {
+    return Operations.messageSignature(signingKeys.getPrivate(), message);
+  }
+
+  @Benchmark
+  public boolean messageValidation() throws Exception {
+    return Operations.messageValidation(signingKeys.getPublic(), message, signature);
+  }
+}
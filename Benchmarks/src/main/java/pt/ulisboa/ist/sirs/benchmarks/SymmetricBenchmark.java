@@ -0,0 +1,41 @@
+package pt.ulisboa.ist.sirs.benchmarks;
+
+import org.openjdk.jmh.annotations.*;
+import pt.ulisboa.ist.sirs.cryptology.Operations;
+
+import javax.crypto.SecretKey;
+import java.util.concurrent.TimeUnit;
+
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class SymmetricBenchmark {
+  @Param({"64", "1024", "16384", "1048576"})
+  private int payloadSize;
+
+  private SecretKey secretKey;
+  private byte[] iv;
+  private byte[] message;
+  private byte[] cipherText;
+
+  @Setup(Level.Trial)
+  public void setup() throws Exception {
+    secretKey = Payloads.secretKey();
+    iv = Payloads.iv();
+    message = Payloads.random(payloadSize);
+    cipherText = Operations.encryptData(secretKey, message, iv);
+  }
+
+  @Benchmark
+  public byte[] encryptData() throws Exception {
+    return Operations.encryptData(secretKey, message, iv);
+  }
+
+  @Benchmark
+  public byte[] decryptData() throws Exception {
+    return Operations.decryptData(secretKey, cipherText, iv);
+  }
+}
@@ -0,0 +1,57 @@
+package pt.ulisboa.ist.sirs.benchmarks;
+
+import org.openjdk.jmh.annotations.*;
+import pt.ulisboa.ist.sirs.cryptology.Base;
+import pt.ulisboa.ist.sirs.cryptology.Operations;
+import pt.ulisboa.ist.sirs.dto.Ticket;
+
+import javax.crypto.SecretKey;
+import java.util.concurrent.TimeUnit;
+
+// Bundling alone, and the sealed round trip the authentication and database servers actually perform
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class TicketBenchmark {
+  private static final String SOURCE = "benchmark-client";
+
+  private byte[] sessionKey;
+  private byte[] sessionIV;
+  private byte[] ticket;
+  private SecretKey serverKey;
+  private byte[] serverIV;
+  private byte[] sealedTicket;
+
+  @Setup(Level.Trial)
+  public void setup() throws Exception {
+    sessionKey = Operations.generateSessionKey();
+    sessionIV = Payloads.iv();
+    ticket = Base.KeyManager.bundleTicket(SOURCE, sessionKey, sessionIV);
+    serverKey = Payloads.secretKey();
+    serverIV = Payloads.iv();
+    sealedTicket = Operations.encryptData(serverKey, ticket, serverIV);
+  }
+
+  @Benchmark
+  public byte[] bundleTicket() throws Exception {
+    return Base.KeyManager.bundleTicket(SOURCE, sessionKey, sessionIV);
+  }
+
+  @Benchmark
+  public Ticket unbundleTicket() {
+    return Base.KeyManager.unbundleTicket(ticket);
+  }
+
+  @Benchmark
+  public byte[] bundleAndSealTicket() throws Exception {
+    return Operations.encryptData(serverKey, Base.KeyManager.bundleTicket(SOURCE, sessionKey, sessionIV), serverIV);
+  }
+
+  @Benchmark
+  public Ticket openAndUnbundleTicket() throws Exception {
+    return Base.KeyManager.unbundleTicket(Operations.decryptData(serverKey, sealedTicket, serverIV));
+  }
+}
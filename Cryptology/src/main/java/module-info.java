@@ -1,6 +1,8 @@
 module pt.ulisboa.ist.sirs.cryptology {
   requires javax.json;
   requires org.apache.commons.codec;
+  requires io.grpc;
+  requires protobuf.java;
 
   exports pt.ulisboa.ist.sirs.cryptology;
   exports pt.ulisboa.ist.sirs.utils;
@@ -4,46 +4,41 @@ import pt.ulisboa.ist.sirs.dto.DiffieHellmanParams;
 import pt.ulisboa.ist.sirs.utils.Utils;
 
 import javax.crypto.Cipher;
-import javax.crypto.KeyAgreement;
-import javax.crypto.interfaces.DHPublicKey;
-import javax.crypto.spec.DHParameterSpec;
 import javax.crypto.spec.SecretKeySpec;
-import java.security.KeyFactory;
 import java.security.KeyPair;
-import java.security.KeyPairGenerator;
 import java.security.PublicKey;
-import java.security.spec.X509EncodedKeySpec;
 import java.util.Arrays;
 
 public final class AbstractAuthServerService {
-  public static synchronized DiffieHellmanParams diffieHellmanExchange(
-    String symmetricKeyPath, String IVPath, byte[] clientPubEnc
-  ) throws Exception {
-    KeyFactory serverKeyFac = KeyFactory.getInstance(Base.DH_ALG);
-    X509EncodedKeySpec x509KeySpec = new X509EncodedKeySpec(clientPubEnc);
-    PublicKey clientPublic = serverKeyFac.generatePublic(x509KeySpec);
+  // Receives the agreed session key and IV, wherever the server keeps them
+  @FunctionalInterface
+  public interface SessionKeySink {
+    void store(byte[] secretKey, byte[] iv) throws Exception;
+  }
 
-    // Server gets DH parameters from client's public Key
-    DHParameterSpec dhParamFromClientPubKey = ((DHPublicKey) clientPublic).getParams();
+  public static DiffieHellmanParams diffieHellmanExchange(
+    byte[] clientPubEnc, CipherSuite cipherSuite, SessionKeySink sink
+  ) throws Exception {
+    // Server only accepts client keys from one of the known groups or curves of the suite
+    PublicKey clientPublic = cipherSuite.parseAgreementKey(clientPubEnc);
 
-    // Server creates his own DH key pair
-    KeyPairGenerator serverKeypairGen = KeyPairGenerator.getInstance(Base.DH_ALG);
-    serverKeypairGen.initialize(dhParamFromClientPubKey);
-    KeyPair serverKeypair = serverKeypairGen.generateKeyPair();
+    // Server creates his own key pair, in the same group as the client
+    KeyPair serverKeypair = cipherSuite.generateAgreementKeyPair(clientPublic);
 
-    // Server creates and initializes his DH KeyAgreement object
-    KeyAgreement serverKeyAgree = KeyAgreement.getInstance(Base.DH_ALG);
-    serverKeyAgree.init(serverKeypair.getPrivate());
+    return diffieHellmanExchange(clientPublic, serverKeypair, cipherSuite, sink);
+  }
 
+  public static DiffieHellmanParams diffieHellmanExchange(
+    PublicKey clientPublic, KeyPair serverKeypair, CipherSuite cipherSuite, SessionKeySink sink
+  ) throws Exception {
     // Server encodes his public key, and sends it to client.
     byte[] serverPubKeyEnc = serverKeypair.getPublic().getEncoded();
 
     /*
      * Server uses client's public key for the first (and only) phase
-     * of his part of the DH protocol.
+     * of his part of the key agreement.
      */
-    serverKeyAgree.doPhase(clientPublic, true);
-    byte[] sharedSecret = serverKeyAgree.generateSecret();
+    byte[] sharedSecret = cipherSuite.agree(serverKeypair.getPrivate(), clientPublic);
     SecretKeySpec aesKey = new SecretKeySpec(sharedSecret, 0, Base.SYMMETRIC_KEY_SIZE, Base.SYMMETRIC_ALG);
 
     // Server encrypts, using AES in CBC mode
@@ -58,8 +53,7 @@ public final class AbstractAuthServerService {
     byte[] iv = Operations.generateIV(Utils.byteArrayToInt(temp), aesKey.getEncoded(), Utils.byteToHex(sharedSecret));
 
     // Cache client crypto data
-    Utils.writeBytesToFile(aesKey.getEncoded(), symmetricKeyPath);
-    Utils.writeBytesToFile(iv, IVPath);
+    sink.store(aesKey.getEncoded(), iv);
 
     return new DiffieHellmanParams(serverPubKeyEnc, encodedParams);
   }
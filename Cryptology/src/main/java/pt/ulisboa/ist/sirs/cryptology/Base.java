@@ -10,10 +10,9 @@ import javax.crypto.NoSuchPaddingException;
 import javax.crypto.SecretKey;
 import javax.crypto.spec.SecretKeySpec;
 import java.io.File;
+import java.nio.ByteBuffer;
 import java.nio.charset.StandardCharsets;
 import java.security.*;
-import java.security.spec.PKCS8EncodedKeySpec;
-import java.security.spec.X509EncodedKeySpec;
 import java.util.Arrays;
 
 public final class Base {
@@ -23,14 +22,23 @@ public final class Base {
   public static final int SIGNATURE_SIZE = ASYMMETRIC_KEY_SIZE / 8; // asymmetric key size in bytes
   public static final int HASH_SIZE = SYMMETRIC_KEY_SIZE; // bytes
   public static final int STD_TICKET_PARAMS_SIZE = 18; // bytes
+  public static final int MAC_SIZE = 32; // bytes
+  public static final int STREAM_SEGMENT_SIZE = 1 << 16; // bytes
   public static final String SYMMETRIC_ALG = "AES";
   public static final String ASYMMETRIC_ALG = "RSA";
   public static final String DH_ALG = "DH";
   public static final String HASH_ALG = "SHA-256";
   public static final String SIGNATURE_ALG = "SHA256withRSA";
   public static final String CIPHER_ALG = "AES/CBC/PKCS5Padding";
+  public static final String AEAD_CIPHER_ALG = "AES/GCM/NoPadding";
+  public static final String MAC_ALG = "HmacSHA256";
+  public static final String SESSION_MAC_CLIENT_LABEL = "session-mac c2s";
+  public static final String SESSION_MAC_SERVER_LABEL = "session-mac s2c";
+  public static final String SESSION_RESUMPTION_LABEL = "session-resumption";
+  public static final String DOCUMENT_STREAM_LABEL = "document-stream";
+  public static final String TICKET_GRANTING_TICKET_HEADER = "ticket-granting-ticket-bin";
   public interface AuthClient {
-    void initializeAuth(byte[] symmetricKey, byte[] iv);
+    void initializeAuth(byte[] symmetricKey, byte[] iv, CipherSuite cipherSuite);
   }
   public interface EKEClientManager {
     String buildPublicKeyPath();
@@ -92,6 +100,29 @@ public final class Base {
       public static byte[] decryptByteArray(byte[] input, SecretKey secretKey, byte[] iv) throws Exception {
         return Security.unprotect(input, secretKey, iv);
       }
+      public static byte[] verifyAndDecryptByteArray(
+        byte[] input, SecretKey secretKey, PublicKey publicKey, byte[] iv
+      ) throws Exception {
+        return Security.verifyAndUnprotect(input, secretKey, publicKey, iv);
+      }
+      public static byte[] decryptByteArrayWithMac(
+        byte[] input, SecretKey secretKey, SecretKey macKey, byte[] iv
+      ) throws Exception {
+        return Security.unprotectWithMac(input, secretKey, macKey, iv);
+      }
+      public static ByteBuffer decryptBuffer(ByteBuffer input, SecretKey secretKey, byte[] iv) throws Exception {
+        return Security.unprotect(input, secretKey, iv);
+      }
+      public static ByteBuffer verifyAndDecryptBuffer(
+        ByteBuffer input, SecretKey secretKey, PublicKey publicKey, byte[] iv
+      ) throws Exception {
+        return Security.verifyAndUnprotect(input, secretKey, publicKey, iv);
+      }
+      public static ByteBuffer decryptBufferWithMac(
+        ByteBuffer input, SecretKey secretKey, SecretKey macKey, byte[] iv
+      ) throws Exception {
+        return Security.unprotectWithMac(input, secretKey, macKey, iv);
+      }
       public static byte[] decryptWithEphemeral(
         byte[] ephemeralKey, byte[] cipher, byte[] ephemeralIV
       ) throws InvalidAlgorithmParameterException, NoSuchPaddingException, IllegalBlockSizeException,
@@ -114,6 +145,21 @@ public final class Base {
         return Security.protect(input, secretKey, privateKey, iv);
       }
 
+      public static byte[] encryptByteArrayWithMac(byte[] input, SecretKey secretKey, SecretKey macKey, byte[] iv)
+          throws Exception {
+        return Security.protectWithMac(input, secretKey, macKey, iv);
+      }
+
+      public static ByteBuffer encryptBuffer(ByteBuffer input, SecretKey secretKey, PrivateKey privateKey, byte[] iv)
+          throws Exception {
+        return Security.protect(input, secretKey, privateKey, iv);
+      }
+
+      public static ByteBuffer encryptBufferWithMac(ByteBuffer input, SecretKey secretKey, SecretKey macKey, byte[] iv)
+          throws Exception {
+        return Security.protectWithMac(input, secretKey, macKey, iv);
+      }
+
       public static byte[] encryptWithEphemeral(
         byte[] ephemeralKey, byte[] message, byte[] ephemeralIV
       ) throws InvalidAlgorithmParameterException, NoSuchPaddingException, IllegalBlockSizeException,
@@ -134,13 +180,11 @@ public final class Base {
   }
 
   public static PublicKey readPublicKey(String publicKeyPath) throws Exception {
-    X509EncodedKeySpec publicKeySpec = new X509EncodedKeySpec(Utils.readBytesFromFile(publicKeyPath));
-    return KeyFactory.getInstance(ASYMMETRIC_ALG).generatePublic(publicKeySpec);
+    return CipherSuite.parseSigningPublicKey(Utils.readBytesFromFile(publicKeyPath));
   }
 
   public static PrivateKey readPrivateKey(String privateKeyPath) throws Exception {
-    PKCS8EncodedKeySpec privateKeySpec = new PKCS8EncodedKeySpec(Utils.readBytesFromFile(privateKeyPath));
-    return KeyFactory.getInstance(ASYMMETRIC_ALG).generatePrivate(privateKeySpec);
+    return CipherSuite.parseSigningPrivateKey(Utils.readBytesFromFile(privateKeyPath));
   }
 
   public static byte[] readIv(String ivPath) throws Exception {
@@ -0,0 +1,157 @@
+package pt.ulisboa.ist.sirs.cryptology;
+
+import pt.ulisboa.ist.sirs.utils.exceptions.UnsupportedCipherSuiteException;
+
+import javax.crypto.BadPaddingException;
+import javax.crypto.IllegalBlockSizeException;
+import javax.crypto.KeyAgreement;
+import javax.crypto.NoSuchPaddingException;
+import javax.crypto.SecretKey;
+import java.nio.ByteBuffer;
+import java.security.*;
+import java.security.spec.InvalidKeySpecException;
+import java.security.spec.PKCS8EncodedKeySpec;
+import java.security.spec.X509EncodedKeySpec;
+import java.util.Arrays;
+
+public enum CipherSuite {
+  RSA_DH_AES_CBC(0, "DH", "RSA", "SHA256withRSA", Base.SIGNATURE_SIZE, Base.CIPHER_ALG),
+  X25519_ED25519_AES_GCM(1, "X25519", "Ed25519", "Ed25519", 64, Base.AEAD_CIPHER_ALG);
+
+  // Suite every peer understands, and the one new handshakes offer
+  public static final CipherSuite DEFAULT = RSA_DH_AES_CBC;
+  public static final CipherSuite PREFERRED = X25519_ED25519_AES_GCM;
+
+  private final int id;
+  private final String keyAgreementAlgorithm;
+  private final String signingKeyAlgorithm;
+  private final String signatureAlgorithm;
+  private final int signatureSize;
+  private final String cipherAlgorithm;
+
+  CipherSuite(
+    int id, String keyAgreementAlgorithm, String signingKeyAlgorithm, String signatureAlgorithm, int signatureSize,
+    String cipherAlgorithm
+  ) {
+    this.id = id;
+    this.keyAgreementAlgorithm = keyAgreementAlgorithm;
+    this.signingKeyAlgorithm = signingKeyAlgorithm;
+    this.signatureAlgorithm = signatureAlgorithm;
+    this.signatureSize = signatureSize;
+    this.cipherAlgorithm = cipherAlgorithm;
+  }
+
+  public int getId() {
+    return id;
+  }
+
+  public String getSignatureAlgorithm() {
+    return signatureAlgorithm;
+  }
+
+  public int getSignatureSize() {
+    return signatureSize;
+  }
+
+  public String getCipherAlgorithm() {
+    return cipherAlgorithm;
+  }
+
+  public static CipherSuite forId(int id) {
+    return Arrays.stream(values()).filter(suite -> suite.id == id).findFirst()
+      .orElseThrow(UnsupportedCipherSuiteException::new);
+  }
+
+  // JDK EdDSA keys report the family name rather than the curve
+  public static CipherSuite forSigningKey(Key key) {
+    return switch (key.getAlgorithm()) {
+      case "RSA" -> RSA_DH_AES_CBC;
+      case "Ed25519", "EdDSA" -> X25519_ED25519_AES_GCM;
+      default -> throw new UnsupportedCipherSuiteException();
+    };
+  }
+
+  public KeyPair generateAgreementKeyPair() throws NoSuchAlgorithmException, InvalidAlgorithmParameterException {
+    if (this == RSA_DH_AES_CBC)
+      return DiffieHellmanGroup.DEFAULT.generateKeyPair();
+    return KeyPairGenerator.getInstance(keyAgreementAlgorithm).generateKeyPair();
+  }
+
+  // Answers a peer in the same group or curve it used
+  public KeyPair generateAgreementKeyPair(PublicKey peerKey)
+    throws NoSuchAlgorithmException, InvalidAlgorithmParameterException {
+    if (this == RSA_DH_AES_CBC)
+      return DiffieHellmanGroup.validate(peerKey).generateKeyPair();
+    return generateAgreementKeyPair();
+  }
+
+  public PublicKey parseAgreementKey(byte[] encoded) throws NoSuchAlgorithmException, InvalidKeySpecException {
+    PublicKey publicKey = KeyFactory.getInstance(keyAgreementAlgorithm).generatePublic(new X509EncodedKeySpec(encoded));
+    if (this == RSA_DH_AES_CBC)
+      DiffieHellmanGroup.validate(publicKey);
+    return publicKey;
+  }
+
+  public byte[] agree(PrivateKey privateKey, PublicKey peerKey) throws NoSuchAlgorithmException, InvalidKeyException {
+    KeyAgreement keyAgreement = KeyAgreement.getInstance(keyAgreementAlgorithm);
+    keyAgreement.init(privateKey);
+    keyAgreement.doPhase(peerKey, true);
+    return keyAgreement.generateSecret();
+  }
+
+  public KeyPair generateSigningKeyPair() throws NoSuchAlgorithmException {
+    KeyPairGenerator keyPairGenerator = KeyPairGenerator.getInstance(signingKeyAlgorithm);
+    if (this == RSA_DH_AES_CBC)
+      keyPairGenerator.initialize(Base.ASYMMETRIC_KEY_SIZE);
+    return keyPairGenerator.generateKeyPair();
+  }
+
+  public static PublicKey parseSigningPublicKey(byte[] encoded) throws InvalidKeySpecException {
+    for (CipherSuite suite : values())
+      try {
+        return KeyFactory.getInstance(suite.signingKeyAlgorithm).generatePublic(new X509EncodedKeySpec(encoded));
+      } catch (NoSuchAlgorithmException | InvalidKeySpecException ignored) {}
+    throw new InvalidKeySpecException("Unsupported public key");
+  }
+
+  public static PrivateKey parseSigningPrivateKey(byte[] encoded) throws InvalidKeySpecException {
+    for (CipherSuite suite : values())
+      try {
+        return KeyFactory.getInstance(suite.signingKeyAlgorithm).generatePrivate(new PKCS8EncodedKeySpec(encoded));
+      } catch (NoSuchAlgorithmException | InvalidKeySpecException ignored) {}
+    throw new InvalidKeySpecException("Unsupported private key");
+  }
+
+  // The GCM suite draws a fresh nonce per message, so the session IV is only used by the CBC suite
+  public byte[] encrypt(SecretKey secretKey, byte[] message, byte[] iv)
+    throws NoSuchPaddingException, InvalidKeyException, NoSuchAlgorithmException, IllegalBlockSizeException,
+    BadPaddingException, InvalidAlgorithmParameterException {
+    if (this == RSA_DH_AES_CBC)
+      return Operations.encryptData(secretKey, message, iv);
+    return Operations.encryptDataAead(cipherAlgorithm, secretKey, message);
+  }
+
+  public byte[] decrypt(SecretKey secretKey, byte[] cipherText, byte[] iv)
+    throws NoSuchPaddingException, InvalidKeyException, NoSuchAlgorithmException, IllegalBlockSizeException,
+    BadPaddingException, InvalidAlgorithmParameterException {
+    if (this == RSA_DH_AES_CBC)
+      return Operations.decryptData(secretKey, cipherText, iv);
+    return Operations.decryptDataAead(cipherAlgorithm, secretKey, cipherText);
+  }
+
+  public ByteBuffer encrypt(SecretKey secretKey, ByteBuffer message, byte[] iv)
+    throws NoSuchPaddingException, InvalidKeyException, NoSuchAlgorithmException, IllegalBlockSizeException,
+    BadPaddingException, InvalidAlgorithmParameterException {
+    if (this == RSA_DH_AES_CBC)
+      return Operations.encryptData(secretKey, message, iv);
+    return Operations.encryptDataAead(cipherAlgorithm, secretKey, message);
+  }
+
+  public ByteBuffer decrypt(SecretKey secretKey, ByteBuffer cipherText, byte[] iv)
+    throws NoSuchPaddingException, InvalidKeyException, NoSuchAlgorithmException, IllegalBlockSizeException,
+    BadPaddingException, InvalidAlgorithmParameterException {
+    if (this == RSA_DH_AES_CBC)
+      return Operations.decryptData(secretKey, cipherText, iv);
+    return Operations.decryptDataAead(cipherAlgorithm, secretKey, cipherText);
+  }
+}
@@ -11,25 +11,27 @@ import javax.crypto.spec.SecretKeySpec;
 import java.io.IOException;
 import java.security.*;
 import java.security.spec.InvalidKeySpecException;
-import java.security.spec.X509EncodedKeySpec;
 
 public final class EKEClient {
-  private KeyAgreement clientKeyAgree;
+  private PrivateKey clientPrivate;
   private SecretKey ephemeralKey;
   private byte[] ephemeralIV;
   private final EKEClientManager crypto;
+  private final CipherSuite cipherSuite;
   public EKEClient(EKEClientManager crypto) {
+    this(crypto, CipherSuite.DEFAULT);
+  }
+  public EKEClient(EKEClientManager crypto, CipherSuite cipherSuite) {
     this.crypto = crypto;
+    this.cipherSuite = cipherSuite;
+  }
+  public CipherSuite getCipherSuite() {
+    return cipherSuite;
   }
   public EKEParams encryptedKeyExchange() throws Exception {
 
-    KeyPairGenerator clientKeypairGen = KeyPairGenerator.getInstance(Base.DH_ALG);
-    clientKeypairGen.initialize(Base.ASYMMETRIC_KEY_SIZE);
-    KeyPair keyPair = clientKeypairGen.generateKeyPair();
-
-    // Client creates and initializes her DH KeyAgreement object
-    clientKeyAgree = KeyAgreement.getInstance(Base.DH_ALG);
-    clientKeyAgree.init(keyPair.getPrivate());
+    KeyPair keyPair = cipherSuite.generateAgreementKeyPair();
+    clientPrivate = keyPair.getPrivate();
     // Client encodes his public key, and sends it to server.
     byte[] ephemeralKeyEnc = Operations.generateSessionKey();
     ephemeralIV = Operations.generateIV(new SecureRandom().nextInt(), ephemeralKeyEnc, String.valueOf(new SecureRandom().nextDouble()));
@@ -55,13 +57,11 @@ public final class EKEClient {
       serverParams,
       ephemeralIV
     ));
-    KeyFactory clientKeyFac = KeyFactory.getInstance(Base.DH_ALG);
-    X509EncodedKeySpec x509KeySpec = new X509EncodedKeySpec(params.publicKeySpecs());
-    PublicKey serverPubKey = clientKeyFac.generatePublic(x509KeySpec);
-
-    clientKeyAgree.doPhase(serverPubKey, true);
+    PublicKey serverPubKey = cipherSuite.parseAgreementKey(params.publicKeySpecs());
     // Instantiate AlgorithmParameters object from parameter encoding obtained from server
-    KeyIVPair pair = Operations.generateKeyIVFromSecretAndParams(clientKeyAgree.generateSecret(), params.params());
+    KeyIVPair pair = Operations.generateKeyIVFromSecretAndParams(
+      cipherSuite.agree(clientPrivate, serverPubKey), params.params()
+    );
 
     crypto.initializeSession(pair.key().getEncoded(), pair.iv());
     return Utils.byteArrayToLong(Operations.decryptData(pair.key(), encryptedChallenge, pair.iv()));
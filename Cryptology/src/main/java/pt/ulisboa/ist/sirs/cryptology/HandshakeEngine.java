@@ -0,0 +1,169 @@
+package pt.ulisboa.ist.sirs.cryptology;
+
+import pt.ulisboa.ist.sirs.dto.DiffieHellmanParams;
+
+import java.security.KeyPair;
+import java.security.PublicKey;
+import java.util.Map;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.locks.ReentrantLock;
+
+public final class HandshakeEngine implements AutoCloseable {
+  public static final String THREADS_VARIABLE = "handshake-threads";
+  public static final String KEY_POOL_VARIABLE = "handshake-key-pool-size";
+  private static final int DEFAULT_KEY_POOL_SIZE = 64;
+  private static final int QUEUED_HANDSHAKES_PER_THREAD = 64;
+  private static final int CLIENT_LOCK_STRIPES = 256;
+  private static final long REFILL_PERIOD_MILLIS = 1000;
+
+  // Server ephemeral keys must match the client's group for finite field DH, curves have no such parameter
+  private record KeyPoolId(CipherSuite cipherSuite, DiffieHellmanGroup group) {
+    KeyPair generate() throws Exception {
+      return group == null ? cipherSuite.generateAgreementKeyPair() : group.generateKeyPair();
+    }
+  }
+
+  private static final class KeyPool {
+    private final BlockingQueue<KeyPair> keyPairs;
+    private final AtomicBoolean refilling = new AtomicBoolean();
+
+    KeyPool(int capacity) {
+      this.keyPairs = new ArrayBlockingQueue<>(capacity);
+    }
+  }
+
+  private final ThreadPoolExecutor workers;
+  private final ScheduledExecutorService refiller;
+  private final Map<KeyPoolId, KeyPool> keyPools = new ConcurrentHashMap<>();
+  private final ReentrantLock[] clientLocks = new ReentrantLock[CLIENT_LOCK_STRIPES];
+  private final int keyPoolSize;
+  private final boolean debug;
+
+  public HandshakeEngine(int threads, int keyPoolSize) {
+    this(threads, keyPoolSize, false);
+  }
+
+  public HandshakeEngine(int threads, int keyPoolSize, boolean debug) {
+    this.keyPoolSize = keyPoolSize;
+    this.debug = debug;
+    // Full queue pushes the handshake back onto the calling thread instead of queueing without bound
+    this.workers = new ThreadPoolExecutor(
+      threads, threads, 0L, TimeUnit.MILLISECONDS,
+      new ArrayBlockingQueue<>(threads * QUEUED_HANDSHAKES_PER_THREAD),
+      threadFactory("handshake"),
+      new ThreadPoolExecutor.CallerRunsPolicy()
+    );
+    this.refiller = Executors.newSingleThreadScheduledExecutor(threadFactory("handshake-keys"));
+    for (int i = 0; i < clientLocks.length; i++)
+      clientLocks[i] = new ReentrantLock();
+
+    if (keyPoolSize > 0) {
+      keyPool(new KeyPoolId(CipherSuite.RSA_DH_AES_CBC, DiffieHellmanGroup.DEFAULT));
+      keyPool(new KeyPoolId(CipherSuite.X25519_ED25519_AES_GCM, null));
+      refiller.scheduleWithFixedDelay(this::refillAll, 0, REFILL_PERIOD_MILLIS, TimeUnit.MILLISECONDS);
+    }
+  }
+
+  public static HandshakeEngine fromEnvironment(boolean debug) {
+    String threads = System.getenv(THREADS_VARIABLE);
+    String keyPoolSize = System.getenv(KEY_POOL_VARIABLE);
+    return new HandshakeEngine(
+      threads == null ? Runtime.getRuntime().availableProcessors() : Integer.parseInt(threads),
+      keyPoolSize == null ? DEFAULT_KEY_POOL_SIZE : Integer.parseInt(keyPoolSize),
+      debug
+    );
+  }
+
+  // Handshakes of different clients run in parallel, handshakes of the same client never overlap in its sink
+  public CompletableFuture<DiffieHellmanParams> exchange(
+    String client, byte[] clientPubEnc, CipherSuite cipherSuite, AbstractAuthServerService.SessionKeySink sink
+  ) {
+    return CompletableFuture.supplyAsync(() -> {
+      try {
+        PublicKey clientPublic = cipherSuite.parseAgreementKey(clientPubEnc);
+        KeyPair serverKeypair = nextKeyPair(cipherSuite, clientPublic);
+        ReentrantLock lock = clientLocks[Math.floorMod(client.hashCode(), clientLocks.length)];
+        lock.lock();
+        try {
+          return AbstractAuthServerService.diffieHellmanExchange(clientPublic, serverKeypair, cipherSuite, sink);
+        } finally {
+          lock.unlock();
+        }
+      } catch (Exception e) {
+        throw new CompletionException(e);
+      }
+    }, workers);
+  }
+
+  private KeyPair nextKeyPair(CipherSuite cipherSuite, PublicKey clientPublic) throws Exception {
+    KeyPoolId id = new KeyPoolId(
+      cipherSuite,
+      cipherSuite == CipherSuite.RSA_DH_AES_CBC ? DiffieHellmanGroup.validate(clientPublic) : null
+    );
+    if (keyPoolSize == 0)
+      return id.generate();
+
+    KeyPool pool = keyPool(id);
+    KeyPair keyPair = pool.keyPairs.poll();
+    if (pool.keyPairs.size() < keyPoolSize / 2)
+      scheduleRefill(id, pool);
+    // An empty pool only means the refiller fell behind, the worker generates the pair itself
+    return keyPair != null ? keyPair : id.generate();
+  }
+
+  private KeyPool keyPool(KeyPoolId id) {
+    return keyPools.computeIfAbsent(id, k -> new KeyPool(keyPoolSize));
+  }
+
+  private void scheduleRefill(KeyPoolId id, KeyPool pool) {
+    if (!pool.refilling.compareAndSet(false, true))
+      return;
+    try {
+      refiller.execute(() -> refill(id, pool));
+    } catch (RejectedExecutionException e) {
+      pool.refilling.set(false);
+    }
+  }
+
+  private void refillAll() {
+    keyPools.forEach((id, pool) -> {
+      if (pool.refilling.compareAndSet(false, true))
+        refill(id, pool);
+    });
+  }
+
+  private void refill(KeyPoolId id, KeyPool pool) {
+    try {
+      while (pool.keyPairs.remainingCapacity() > 0 && !refiller.isShutdown())
+        pool.keyPairs.offer(id.generate());
+    } catch (Exception e) {
+      // Throwing here would cancel the scheduled refills, and the pool left empty makes every worker
+      // generate its own pair, so a generator that keeps failing reaches the handshake callers instead
+      if (debug)
+        System.out.println("HandshakeEngine: could not refill " + id + " key pool: " + e.getMessage());
+    } finally {
+      pool.refilling.set(false);
+    }
+  }
+
+  public int pooledKeyPairs() {
+    return keyPools.values().stream().mapToInt(pool -> pool.keyPairs.size()).sum();
+  }
+
+  @Override
+  public void close() {
+    refiller.shutdownNow();
+    workers.shutdown();
+  }
+
+  private static ThreadFactory threadFactory(String name) {
+    AtomicInteger count = new AtomicInteger();
+    return runnable -> {
+      Thread thread = new Thread(runnable, name + "-" + count.incrementAndGet());
+      thread.setDaemon(true);
+      return thread;
+    };
+  }
+}
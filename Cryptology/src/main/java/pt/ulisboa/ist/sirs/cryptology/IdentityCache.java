@@ -0,0 +1,121 @@
+package pt.ulisboa.ist.sirs.cryptology;
+
+import pt.ulisboa.ist.sirs.utils.Utils;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.security.PublicKey;
+import java.security.cert.CertificateException;
+import java.security.cert.CertificateFactory;
+import java.security.cert.X509Certificate;
+import java.security.spec.InvalidKeySpecException;
+import java.time.Clock;
+import java.time.Duration;
+import java.util.Date;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+public final class IdentityCache {
+  public static final Duration DEFAULT_LIFETIME = Duration.ofHours(1);
+  private static final int MAX_ENTRIES = 4096;
+  private static final IdentityCache SHARED = new IdentityCache(
+    Base.CryptographicCore.getCertPath(), DEFAULT_LIFETIME, Clock.systemUTC()
+  );
+
+  private record Identity(PublicKey publicKey, long expiresAt) {}
+
+  private final Map<ByteBuffer, Identity> identities = new ConcurrentHashMap<>();
+  private final String certificatePath;
+  private final Clock clock;
+  private final long lifetime;
+  private volatile byte[] certificate;
+
+  public IdentityCache(String certificatePath, Duration lifetime, Clock clock) {
+    if (lifetime.isNegative() || lifetime.isZero())
+      throw new IllegalArgumentException("Identities need a positive lifetime");
+    this.certificatePath = certificatePath;
+    this.lifetime = lifetime.toMillis();
+    this.clock = clock;
+  }
+
+  // Own certificate and the peers this process talks to
+  public static IdentityCache shared() {
+    return SHARED;
+  }
+
+  // Read from disk on first use only, the copy handed out is the caller's to keep
+  public byte[] ownCertificate() {
+    byte[] encoded = certificate;
+    if (encoded == null)
+      synchronized (this) {
+        if (certificate == null)
+          try {
+            certificate = Utils.readBytesFromFile(certificatePath);
+          } catch (IOException e) {
+            throw new UncheckedIOException(e);
+          }
+        encoded = certificate;
+      }
+    return encoded.clone();
+  }
+
+  // A cached certificate is only trusted until its own expiry, after that it is parsed and rejected again
+  public PublicKey peerKey(byte[] encodedCertificate) throws CertificateException {
+    ByteBuffer fingerprint = fingerprint(encodedCertificate);
+    long now = clock.millis();
+    Identity identity = identities.get(fingerprint);
+    if (identity != null && identity.expiresAt() > now)
+      return identity.publicKey();
+
+    X509Certificate certificate = (X509Certificate) CertificateFactory.getInstance("X.509").generateCertificate(
+      new ByteArrayInputStream(encodedCertificate)
+    );
+    certificate.checkValidity(new Date(now));
+    store(fingerprint, new Identity(
+      certificate.getPublicKey(), Math.min(now + lifetime, certificate.getNotAfter().getTime())
+    ), now);
+    return certificate.getPublicKey();
+  }
+
+  // Bare keys, as sent by clients that finish a handshake without a certificate
+  public PublicKey publicKey(byte[] encodedKey) throws InvalidKeySpecException {
+    ByteBuffer fingerprint = fingerprint(encodedKey);
+    long now = clock.millis();
+    Identity identity = identities.get(fingerprint);
+    if (identity != null && identity.expiresAt() > now)
+      return identity.publicKey();
+
+    PublicKey publicKey = CipherSuite.parseSigningPublicKey(encodedKey);
+    store(fingerprint, new Identity(publicKey, now + lifetime), now);
+    return publicKey;
+  }
+
+  public int size() {
+    return identities.size();
+  }
+
+  private void store(ByteBuffer fingerprint, Identity identity, long now) {
+    if (identities.size() >= MAX_ENTRIES)
+      identities.values().removeIf(cached -> cached.expiresAt() <= now);
+    if (identities.size() < MAX_ENTRIES)
+      identities.put(fingerprint, identity);
+  }
+
+  private static ByteBuffer fingerprint(byte[] encoded) {
+    MessageDigest digest;
+    try {
+      digest = Primitives.digest(Base.HASH_ALG);
+    } catch (NoSuchAlgorithmException e) {
+      throw new IllegalStateException(e);
+    }
+    try {
+      return ByteBuffer.wrap(digest.digest(encoded));
+    } finally {
+      Primitives.release(digest);
+    }
+  }
+}
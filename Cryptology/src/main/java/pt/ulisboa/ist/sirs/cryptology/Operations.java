@@ -1,6 +1,7 @@
 package pt.ulisboa.ist.sirs.cryptology;
 
 import pt.ulisboa.ist.sirs.dto.KeyIVPair;
+import pt.ulisboa.ist.sirs.utils.BufferPool;
 import pt.ulisboa.ist.sirs.utils.Utils;
 
 import java.io.IOException;
@@ -8,87 +9,333 @@ import java.nio.ByteBuffer;
 import java.security.*;
 import java.util.Arrays;
 
+import pt.ulisboa.ist.sirs.utils.exceptions.TamperedMessageException;
+
+import javax.crypto.AEADBadTagException;
 import javax.crypto.BadPaddingException;
 import javax.crypto.Cipher;
 import javax.crypto.IllegalBlockSizeException;
 import javax.crypto.KeyGenerator;
+import javax.crypto.Mac;
 import javax.crypto.NoSuchPaddingException;
 import javax.crypto.SecretKey;
+import javax.crypto.ShortBufferException;
+import javax.crypto.spec.GCMParameterSpec;
 import javax.crypto.spec.IvParameterSpec;
 import javax.crypto.spec.SecretKeySpec;
 
 public final class Operations {
+  static final int AEAD_NONCE_SIZE = 12; // bytes
+  static final int AEAD_TAG_SIZE = 128; // in bits
+  static final SecureRandom NONCES = new SecureRandom();
+
   public static byte[] encryptData(
     SecretKey secretKey, byte[] message, byte[] iv
   ) throws NoSuchPaddingException, InvalidKeyException, NoSuchAlgorithmException, IllegalBlockSizeException,
   BadPaddingException, InvalidAlgorithmParameterException {
-    IvParameterSpec ivParameterSpec = new IvParameterSpec(iv);
-
-    Cipher cipher = Cipher.getInstance(Base.CIPHER_ALG);
-    cipher.init(Cipher.ENCRYPT_MODE, secretKey, ivParameterSpec);
+    return encryptData(secretKey, message, new IvParameterSpec(iv));
+  }
 
-    return cipher.doFinal(message);
+  public static byte[] encryptData(
+    SecretKey secretKey, byte[] message, IvParameterSpec ivParameterSpec
+  ) throws NoSuchPaddingException, InvalidKeyException, NoSuchAlgorithmException, IllegalBlockSizeException,
+  BadPaddingException, InvalidAlgorithmParameterException {
+    Cipher cipher = Primitives.cipher(Base.CIPHER_ALG);
+    try {
+      cipher.init(Cipher.ENCRYPT_MODE, secretKey, ivParameterSpec);
+      return cipher.doFinal(message);
+    } finally {
+      Primitives.release(cipher);
+    }
   }
 
   public static byte[] decryptData(
     SecretKey secretKey, byte[] cipherText, byte[] iv
   ) throws NoSuchPaddingException, InvalidKeyException, NoSuchAlgorithmException, IllegalBlockSizeException,
   BadPaddingException, InvalidAlgorithmParameterException {
-    IvParameterSpec ivParameterSpec = new IvParameterSpec(iv);
+    return decryptData(secretKey, cipherText, new IvParameterSpec(iv));
+  }
 
-    Cipher cipher = Cipher.getInstance(Base.CIPHER_ALG);
-    cipher.init(Cipher.DECRYPT_MODE, secretKey, ivParameterSpec);
+  public static byte[] decryptData(
+    SecretKey secretKey, byte[] cipherText, IvParameterSpec ivParameterSpec
+  ) throws NoSuchPaddingException, InvalidKeyException, NoSuchAlgorithmException, IllegalBlockSizeException,
+  BadPaddingException, InvalidAlgorithmParameterException {
+    Cipher cipher = Primitives.cipher(Base.CIPHER_ALG);
+    try {
+      cipher.init(Cipher.DECRYPT_MODE, secretKey, ivParameterSpec);
+      return cipher.doFinal(cipherText);
+    } finally {
+      Primitives.release(cipher);
+    }
+  }
 
-    return cipher.doFinal(cipherText);
+  // Output is nonce || ciphertext || tag
+  public static byte[] encryptDataAead(
+    String algorithm, SecretKey secretKey, byte[] message
+  ) throws NoSuchPaddingException, InvalidKeyException, NoSuchAlgorithmException, IllegalBlockSizeException,
+  BadPaddingException, InvalidAlgorithmParameterException {
+    byte[] nonce = new byte[AEAD_NONCE_SIZE];
+    NONCES.nextBytes(nonce);
+    Cipher cipher = Primitives.cipher(algorithm);
+    try {
+      cipher.init(Cipher.ENCRYPT_MODE, secretKey, new GCMParameterSpec(AEAD_TAG_SIZE, nonce));
+      byte[] cryptogram = new byte[AEAD_NONCE_SIZE + cipher.getOutputSize(message.length)];
+      System.arraycopy(nonce, 0, cryptogram, 0, AEAD_NONCE_SIZE);
+      cipher.doFinal(message, 0, message.length, cryptogram, AEAD_NONCE_SIZE);
+      return cryptogram;
+    } catch (ShortBufferException e) {
+      throw new IllegalBlockSizeException(e.getMessage());
+    } finally {
+      Primitives.release(cipher);
+    }
+  }
+
+  public static byte[] decryptDataAead(
+    String algorithm, SecretKey secretKey, byte[] cryptogram
+  ) throws NoSuchPaddingException, InvalidKeyException, NoSuchAlgorithmException, IllegalBlockSizeException,
+  BadPaddingException, InvalidAlgorithmParameterException {
+    if (cryptogram.length < AEAD_NONCE_SIZE)
+      throw new TamperedMessageException();
+    Cipher cipher = Primitives.cipher(algorithm);
+    try {
+      cipher.init(
+        Cipher.DECRYPT_MODE, secretKey, new GCMParameterSpec(AEAD_TAG_SIZE, cryptogram, 0, AEAD_NONCE_SIZE)
+      );
+      return cipher.doFinal(cryptogram, AEAD_NONCE_SIZE, cryptogram.length - AEAD_NONCE_SIZE);
+    } catch (AEADBadTagException e) {
+      throw new TamperedMessageException();
+    } finally {
+      Primitives.release(cipher);
+    }
+  }
+
+  // Buffer variants read the input without consuming it and return a flipped buffer from the shared pool
+  public static ByteBuffer encryptData(
+    SecretKey secretKey, ByteBuffer message, byte[] iv
+  ) throws NoSuchPaddingException, InvalidKeyException, NoSuchAlgorithmException, IllegalBlockSizeException,
+  BadPaddingException, InvalidAlgorithmParameterException {
+    return encryptData(secretKey, null, message, iv, 0);
+  }
+
+  // Encrypts prefix || message, leaving room for a trailer the caller appends after the ciphertext
+  static ByteBuffer encryptData(
+    SecretKey secretKey, byte[] prefix, ByteBuffer message, byte[] iv, int trailer
+  ) throws NoSuchPaddingException, InvalidKeyException, NoSuchAlgorithmException, IllegalBlockSizeException,
+  BadPaddingException, InvalidAlgorithmParameterException {
+    int prefixLength = prefix == null ? 0 : prefix.length;
+    Cipher cipher = Primitives.cipher(Base.CIPHER_ALG);
+    try {
+      cipher.init(Cipher.ENCRYPT_MODE, secretKey, new IvParameterSpec(iv));
+      ByteBuffer cryptogram = BufferPool.shared().acquire(
+        cipher.getOutputSize(prefixLength + message.remaining()) + trailer
+      );
+      if (prefixLength > 0)
+        cipher.update(ByteBuffer.wrap(prefix), cryptogram);
+      cipher.doFinal(message.duplicate(), cryptogram);
+      return cryptogram.flip();
+    } catch (ShortBufferException e) {
+      throw new IllegalBlockSizeException(e.getMessage());
+    } finally {
+      Primitives.release(cipher);
+    }
+  }
+
+  public static ByteBuffer decryptData(
+    SecretKey secretKey, ByteBuffer cipherText, byte[] iv
+  ) throws NoSuchPaddingException, InvalidKeyException, NoSuchAlgorithmException, IllegalBlockSizeException,
+  BadPaddingException, InvalidAlgorithmParameterException {
+    Cipher cipher = Primitives.cipher(Base.CIPHER_ALG);
+    try {
+      cipher.init(Cipher.DECRYPT_MODE, secretKey, new IvParameterSpec(iv));
+      ByteBuffer message = BufferPool.shared().acquire(cipher.getOutputSize(cipherText.remaining()));
+      cipher.doFinal(cipherText.duplicate(), message);
+      return message.flip();
+    } catch (ShortBufferException e) {
+      throw new IllegalBlockSizeException(e.getMessage());
+    } finally {
+      Primitives.release(cipher);
+    }
+  }
+
+  public static ByteBuffer encryptDataAead(
+    String algorithm, SecretKey secretKey, ByteBuffer message
+  ) throws NoSuchPaddingException, InvalidKeyException, NoSuchAlgorithmException, IllegalBlockSizeException,
+  BadPaddingException, InvalidAlgorithmParameterException {
+    byte[] nonce = new byte[AEAD_NONCE_SIZE];
+    NONCES.nextBytes(nonce);
+    Cipher cipher = Primitives.cipher(algorithm);
+    try {
+      cipher.init(Cipher.ENCRYPT_MODE, secretKey, new GCMParameterSpec(AEAD_TAG_SIZE, nonce));
+      ByteBuffer cryptogram = BufferPool.shared().acquire(
+        AEAD_NONCE_SIZE + cipher.getOutputSize(message.remaining())
+      );
+      cryptogram.put(nonce);
+      cipher.doFinal(message.duplicate(), cryptogram);
+      return cryptogram.flip();
+    } catch (ShortBufferException e) {
+      throw new IllegalBlockSizeException(e.getMessage());
+    } finally {
+      Primitives.release(cipher);
+    }
+  }
+
+  public static ByteBuffer decryptDataAead(
+    String algorithm, SecretKey secretKey, ByteBuffer cryptogram
+  ) throws NoSuchPaddingException, InvalidKeyException, NoSuchAlgorithmException, IllegalBlockSizeException,
+  BadPaddingException, InvalidAlgorithmParameterException {
+    if (cryptogram.remaining() < AEAD_NONCE_SIZE)
+      throw new TamperedMessageException();
+    ByteBuffer input = cryptogram.duplicate();
+    byte[] nonce = new byte[AEAD_NONCE_SIZE];
+    input.get(nonce);
+    Cipher cipher = Primitives.cipher(algorithm);
+    try {
+      cipher.init(Cipher.DECRYPT_MODE, secretKey, new GCMParameterSpec(AEAD_TAG_SIZE, nonce));
+      ByteBuffer message = BufferPool.shared().acquire(Math.max(0, cipher.getOutputSize(input.remaining())));
+      cipher.doFinal(input, message);
+      return message.flip();
+    } catch (AEADBadTagException e) {
+      throw new TamperedMessageException();
+    } catch (ShortBufferException e) {
+      throw new IllegalBlockSizeException(e.getMessage());
+    } finally {
+      Primitives.release(cipher);
+    }
   }
 
   public static byte[] encryptDataAsymmetric(
     PublicKey secretKey, byte[] message
   ) throws NoSuchPaddingException, InvalidKeyException, NoSuchAlgorithmException, IllegalBlockSizeException,
   BadPaddingException {
-    Cipher cipher = Cipher.getInstance(Base.ASYMMETRIC_ALG);
-    cipher.init(Cipher.ENCRYPT_MODE, secretKey);
-    return cipher.doFinal(message);
+    Cipher cipher = Primitives.cipher(Base.ASYMMETRIC_ALG);
+    try {
+      cipher.init(Cipher.ENCRYPT_MODE, secretKey);
+      return cipher.doFinal(message);
+    } finally {
+      Primitives.release(cipher);
+    }
   }
 
   public static byte[] decryptDataAsymmetric(
     PrivateKey secretKey, byte[] cipherText
   ) throws NoSuchPaddingException, InvalidKeyException, NoSuchAlgorithmException, IllegalBlockSizeException,
   BadPaddingException {
-    Cipher cipher = Cipher.getInstance(Base.ASYMMETRIC_ALG);
-    cipher.init(Cipher.DECRYPT_MODE, secretKey);
-    return cipher.doFinal(cipherText);
+    Cipher cipher = Primitives.cipher(Base.ASYMMETRIC_ALG);
+    try {
+      cipher.init(Cipher.DECRYPT_MODE, secretKey);
+      return cipher.doFinal(cipherText);
+    } finally {
+      Primitives.release(cipher);
+    }
   }
 
   public static byte[] hash(
     byte[] message
   ) throws NoSuchAlgorithmException {
-    final MessageDigest messageDigest = MessageDigest.getInstance(Base.HASH_ALG);
-    return messageDigest.digest(message);
+    final MessageDigest messageDigest = Primitives.digest(Base.HASH_ALG);
+    try {
+      return messageDigest.digest(message);
+    } finally {
+      Primitives.release(messageDigest);
+    }
+  }
+
+  public static byte[] hash(
+    ByteBuffer message
+  ) throws NoSuchAlgorithmException {
+    final MessageDigest messageDigest = Primitives.digest(Base.HASH_ALG);
+    try {
+      messageDigest.update(message.duplicate());
+      return messageDigest.digest();
+    } finally {
+      Primitives.release(messageDigest);
+    }
   }
 
   public static byte[] messageSignature(
     PrivateKey privateKey, byte[] message
   ) throws SignatureException, InvalidKeyException, NoSuchAlgorithmException {
-    byte[] digest = MessageDigest.getInstance(Base.HASH_ALG).digest(message);
+    return signDigest(privateKey, hash(message));
+  }
 
-    Signature signature = Signature.getInstance(Base.SIGNATURE_ALG);
-    signature.initSign(privateKey);
-    signature.update(digest);
+  public static byte[] messageSignature(
+    PrivateKey privateKey, ByteBuffer message
+  ) throws SignatureException, InvalidKeyException, NoSuchAlgorithmException {
+    return signDigest(privateKey, hash(message));
+  }
 
-    return signature.sign();
+  static byte[] signDigest(
+    PrivateKey privateKey, byte[] digest
+  ) throws SignatureException, InvalidKeyException, NoSuchAlgorithmException {
+    Signature signature = Primitives.signature(CipherSuite.forSigningKey(privateKey).getSignatureAlgorithm());
+    try {
+      signature.initSign(privateKey);
+      signature.update(digest);
+      return signature.sign();
+    } finally {
+      Primitives.release(signature);
+    }
   }
 
   public static boolean messageValidation(
     PublicKey publicKey, byte[] message, byte[] messageSignature
   ) throws SignatureException, InvalidKeyException, NoSuchAlgorithmException {
-    byte[] digest = MessageDigest.getInstance(Base.HASH_ALG).digest(message);
+    return verifyDigest(publicKey, hash(message), messageSignature);
+  }
 
-    Signature signature = Signature.getInstance(Base.SIGNATURE_ALG);
-    signature.initVerify(publicKey);
-    signature.update(digest);
+  public static boolean messageValidation(
+    PublicKey publicKey, ByteBuffer message, byte[] messageSignature
+  ) throws SignatureException, InvalidKeyException, NoSuchAlgorithmException {
+    return verifyDigest(publicKey, hash(message), messageSignature);
+  }
 
-    return signature.verify(messageSignature);
+  static boolean verifyDigest(
+    PublicKey publicKey, byte[] digest, byte[] messageSignature
+  ) throws SignatureException, InvalidKeyException, NoSuchAlgorithmException {
+    Signature signature = Primitives.signature(CipherSuite.forSigningKey(publicKey).getSignatureAlgorithm());
+    try {
+      signature.initVerify(publicKey);
+      signature.update(digest);
+      return signature.verify(messageSignature);
+    } finally {
+      Primitives.release(signature);
+    }
+  }
+
+  public static byte[] hmac(
+    SecretKey macKey, byte[]... parts
+  ) throws NoSuchAlgorithmException, InvalidKeyException {
+    Mac mac = Primitives.mac(Base.MAC_ALG);
+    try {
+      mac.init(macKey);
+      for (byte[] part : parts)
+        mac.update(part);
+      return mac.doFinal();
+    } finally {
+      Primitives.release(mac);
+    }
+  }
+
+  public static byte[] hmac(
+    SecretKey macKey, byte[] iv, ByteBuffer message
+  ) throws NoSuchAlgorithmException, InvalidKeyException {
+    Mac mac = Primitives.mac(Base.MAC_ALG);
+    try {
+      mac.init(macKey);
+      mac.update(iv);
+      mac.update(message.duplicate());
+      return mac.doFinal();
+    } finally {
+      Primitives.release(mac);
+    }
+  }
+
+  public static SecretKey deriveMacKey(
+    SecretKey sessionKey, String label
+  ) throws NoSuchAlgorithmException, InvalidKeyException {
+    return new SecretKeySpec(
+      hmac(new SecretKeySpec(sessionKey.getEncoded(), Base.MAC_ALG), label.getBytes()), Base.MAC_ALG
+    );
   }
 
   public static byte[] generateSessionKey() {
@@ -0,0 +1,104 @@
+package pt.ulisboa.ist.sirs.cryptology;
+
+import javax.crypto.Cipher;
+import javax.crypto.Mac;
+import javax.crypto.NoSuchPaddingException;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.security.Signature;
+import java.util.Map;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicInteger;
+
+final class Primitives {
+  private static final int MAX_IDLE = Math.max(4, Runtime.getRuntime().availableProcessors() * 2);
+
+  @FunctionalInterface
+  private interface Factory<T> {
+    T create(String algorithm) throws NoSuchAlgorithmException, NoSuchPaddingException;
+  }
+
+  // Instances are re-initialized by every caller before use, so idle ones can be shared across threads
+  private static final class Pool<T> {
+    private final Map<String, Queue<T>> idle = new ConcurrentHashMap<>();
+    private final Map<String, AtomicInteger> sizes = new ConcurrentHashMap<>();
+    private final Factory<T> factory;
+
+    private Pool(Factory<T> factory) {
+      this.factory = factory;
+    }
+
+    private T borrow(String algorithm) throws NoSuchAlgorithmException, NoSuchPaddingException {
+      Queue<T> queue = idle.get(algorithm);
+      T instance = queue == null ? null : queue.poll();
+      if (instance == null)
+        return factory.create(algorithm);
+      sizes.get(algorithm).decrementAndGet();
+      return instance;
+    }
+
+    private void release(String algorithm, T instance) {
+      AtomicInteger size = sizes.computeIfAbsent(algorithm, k -> new AtomicInteger());
+      if (size.incrementAndGet() > MAX_IDLE) {
+        size.decrementAndGet();
+        return;
+      }
+      idle.computeIfAbsent(algorithm, k -> new ConcurrentLinkedQueue<>()).offer(instance);
+    }
+  }
+
+  private static final Pool<Cipher> CIPHERS = new Pool<>(Cipher::getInstance);
+  private static final Pool<Signature> SIGNATURES = new Pool<>(Signature::getInstance);
+  private static final Pool<MessageDigest> DIGESTS = new Pool<>(MessageDigest::getInstance);
+  private static final Pool<Mac> MACS = new Pool<>(Mac::getInstance);
+
+  private Primitives() {}
+
+  static Cipher cipher(String algorithm) throws NoSuchAlgorithmException, NoSuchPaddingException {
+    return CIPHERS.borrow(algorithm);
+  }
+
+  static void release(Cipher cipher) {
+    CIPHERS.release(cipher.getAlgorithm(), cipher);
+  }
+
+  static Signature signature(String algorithm) throws NoSuchAlgorithmException {
+    try {
+      return SIGNATURES.borrow(algorithm);
+    } catch (NoSuchPaddingException e) {
+      throw new NoSuchAlgorithmException(e.getMessage());
+    }
+  }
+
+  static void release(Signature signature) {
+    SIGNATURES.release(signature.getAlgorithm(), signature);
+  }
+
+  static MessageDigest digest(String algorithm) throws NoSuchAlgorithmException {
+    try {
+      return DIGESTS.borrow(algorithm);
+    } catch (NoSuchPaddingException e) {
+      throw new NoSuchAlgorithmException(e.getMessage());
+    }
+  }
+
+  static void release(MessageDigest digest) {
+    digest.reset();
+    DIGESTS.release(digest.getAlgorithm(), digest);
+  }
+
+  static Mac mac(String algorithm) throws NoSuchAlgorithmException {
+    try {
+      return MACS.borrow(algorithm);
+    } catch (NoSuchPaddingException e) {
+      throw new NoSuchAlgorithmException(e.getMessage());
+    }
+  }
+
+  static void release(Mac mac) {
+    mac.reset();
+    MACS.release(mac.getAlgorithm(), mac);
+  }
+}
@@ -0,0 +1,51 @@
+package pt.ulisboa.ist.sirs.cryptology;
+
+import javax.crypto.SecretKey;
+import java.io.*;
+import java.util.Optional;
+
+// Records a server hands to clients and later reads back, sealed under a key only servers hold
+public final class SealedRecord {
+  @FunctionalInterface
+  public interface Writer {
+    void write(DataOutputStream out) throws Exception;
+  }
+
+  @FunctionalInterface
+  public interface Reader<T> {
+    T read(long expiresAt, DataInputStream in) throws Exception;
+  }
+
+  public static byte[] seal(SecretKey key, long expiresAt, Writer body) throws Exception {
+    ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+    try (DataOutputStream out = new DataOutputStream(bytes)) {
+      out.writeLong(expiresAt);
+      body.write(out);
+    }
+    return Operations.encryptDataAead(Base.AEAD_CIPHER_ALG, key, bytes.toByteArray());
+  }
+
+  // Expired records are empty, tampered ones fail decryption and malformed ones end in an EOFException
+  public static <T> Optional<T> unseal(SecretKey key, byte[] record, long now, Reader<T> body) throws Exception {
+    try (DataInputStream in = new DataInputStream(new ByteArrayInputStream(
+      Operations.decryptDataAead(Base.AEAD_CIPHER_ALG, key, record)
+    ))) {
+      long expiresAt = in.readLong();
+      if (expiresAt < now)
+        return Optional.empty();
+      return Optional.of(body.read(expiresAt, in));
+    }
+  }
+
+  public static void writeField(DataOutputStream out, byte[] field) throws IOException {
+    out.writeInt(field.length);
+    out.write(field);
+  }
+
+  public static byte[] readField(DataInputStream in) throws IOException {
+    int length = in.readInt();
+    if (length < 0 || length > in.available())
+      throw new EOFException();
+    return in.readNBytes(length);
+  }
+}
@@ -1,5 +1,9 @@
 package pt.ulisboa.ist.sirs.cryptology;
 
+import pt.ulisboa.ist.sirs.utils.BufferPool;
+import pt.ulisboa.ist.sirs.utils.exceptions.TamperedMessageException;
+
+import java.nio.ByteBuffer;
 import java.security.*;
 import java.util.Arrays;
 
@@ -14,10 +18,11 @@ public final class Security {
       throws SignatureException, InvalidKeyException, NoSuchAlgorithmException,
       InvalidAlgorithmParameterException, NoSuchPaddingException, IllegalBlockSizeException, BadPaddingException {
     byte[] signature = Operations.messageSignature(privateKey, message);
+    int signatureSize = CipherSuite.forSigningKey(privateKey).getSignatureSize();
 
-    byte[] protectedDocument = new byte[Base.SIGNATURE_SIZE + message.length];
-    System.arraycopy(signature, 0, protectedDocument, 0, Base.SIGNATURE_SIZE);
-    System.arraycopy(message, 0, protectedDocument, Base.SIGNATURE_SIZE, message.length);
+    byte[] protectedDocument = new byte[signatureSize + message.length];
+    System.arraycopy(signature, 0, protectedDocument, 0, signatureSize);
+    System.arraycopy(message, 0, protectedDocument, signatureSize, message.length);
 
     return Operations.encryptData(secretKey, protectedDocument, iv);
   }
@@ -26,8 +31,9 @@ public final class Security {
       throws NoSuchPaddingException, SignatureException, NoSuchAlgorithmException, InvalidKeyException,
       IllegalBlockSizeException, BadPaddingException, InvalidAlgorithmParameterException {
     byte[] protectedDocument = Operations.decryptData(secretKey, cryptogram, iv);
-    byte[] signature = Arrays.copyOfRange(protectedDocument, 0, Base.SIGNATURE_SIZE);
-    byte[] message = Arrays.copyOfRange(protectedDocument, Base.SIGNATURE_SIZE, protectedDocument.length);
+    int signatureSize = CipherSuite.forSigningKey(publicKey).getSignatureSize();
+    byte[] signature = Arrays.copyOfRange(protectedDocument, 0, signatureSize);
+    byte[] message = Arrays.copyOfRange(protectedDocument, signatureSize, protectedDocument.length);
 
     return Operations.messageValidation(publicKey, message, signature);
   }
@@ -42,4 +48,104 @@ public final class Security {
     return document;
   }
 
+  public static byte[] verifyAndUnprotect(byte[] cryptogram, SecretKey secretKey, PublicKey publicKey, byte[] iv)
+      throws NoSuchPaddingException, SignatureException, NoSuchAlgorithmException, InvalidKeyException,
+      IllegalBlockSizeException, BadPaddingException, InvalidAlgorithmParameterException {
+    byte[] protectedDocument = Operations.decryptData(secretKey, cryptogram, iv);
+    int signatureSize = CipherSuite.forSigningKey(publicKey).getSignatureSize();
+    if (protectedDocument.length < signatureSize)
+      throw new TamperedMessageException();
+    byte[] signature = Arrays.copyOfRange(protectedDocument, 0, signatureSize);
+    byte[] message = Arrays.copyOfRange(protectedDocument, signatureSize, protectedDocument.length);
+
+    if (!Operations.messageValidation(publicKey, message, signature))
+      throw new TamperedMessageException();
+    return message;
+  }
+
+  public static byte[] protectWithMac(byte[] message, SecretKey secretKey, SecretKey macKey, byte[] iv)
+      throws InvalidKeyException, NoSuchAlgorithmException, InvalidAlgorithmParameterException,
+      NoSuchPaddingException, IllegalBlockSizeException, BadPaddingException {
+    byte[] cipherText = Operations.encryptData(secretKey, message, iv);
+    byte[] tag = Operations.hmac(macKey, iv, cipherText);
+
+    byte[] protectedDocument = new byte[cipherText.length + Base.MAC_SIZE];
+    System.arraycopy(cipherText, 0, protectedDocument, 0, cipherText.length);
+    System.arraycopy(tag, 0, protectedDocument, cipherText.length, Base.MAC_SIZE);
+    return protectedDocument;
+  }
+
+  public static byte[] unprotectWithMac(byte[] cryptogram, SecretKey secretKey, SecretKey macKey, byte[] iv)
+      throws InvalidKeyException, NoSuchAlgorithmException, InvalidAlgorithmParameterException,
+      NoSuchPaddingException, IllegalBlockSizeException, BadPaddingException {
+    if (cryptogram.length < Base.MAC_SIZE)
+      throw new TamperedMessageException();
+    byte[] cipherText = Arrays.copyOfRange(cryptogram, 0, cryptogram.length - Base.MAC_SIZE);
+    byte[] tag = Arrays.copyOfRange(cryptogram, cryptogram.length - Base.MAC_SIZE, cryptogram.length);
+
+    // Encrypt-then-MAC, the tag is checked before anything is decrypted
+    if (!MessageDigest.isEqual(tag, Operations.hmac(macKey, iv, cipherText)))
+      throw new TamperedMessageException();
+    return Operations.decryptData(secretKey, cipherText, iv);
+  }
+
+  // Buffer variants of the above, returned buffers come from the shared pool and are released by the caller
+  public static ByteBuffer protect(ByteBuffer message, SecretKey secretKey, PrivateKey privateKey, byte[] iv)
+      throws SignatureException, InvalidKeyException, NoSuchAlgorithmException,
+      InvalidAlgorithmParameterException, NoSuchPaddingException, IllegalBlockSizeException, BadPaddingException {
+    byte[] signature = Operations.messageSignature(privateKey, message);
+    int signatureSize = CipherSuite.forSigningKey(privateKey).getSignatureSize();
+    return Operations.encryptData(
+      secretKey, signature.length == signatureSize ? signature : Arrays.copyOf(signature, signatureSize), message, iv, 0
+    );
+  }
+
+  public static ByteBuffer unprotect(ByteBuffer cryptogram, SecretKey secretKey, byte[] iv)
+      throws NoSuchPaddingException, NoSuchAlgorithmException, InvalidKeyException,
+      InvalidAlgorithmParameterException, IllegalBlockSizeException, BadPaddingException {
+    ByteBuffer protectedDocument = Operations.decryptData(secretKey, cryptogram, iv);
+    if (protectedDocument.remaining() < Base.SIGNATURE_SIZE) {
+      BufferPool.shared().release(protectedDocument);
+      throw new TamperedMessageException();
+    }
+    return protectedDocument.position(Base.SIGNATURE_SIZE);
+  }
+
+  public static ByteBuffer verifyAndUnprotect(ByteBuffer cryptogram, SecretKey secretKey, PublicKey publicKey, byte[] iv)
+      throws NoSuchPaddingException, SignatureException, NoSuchAlgorithmException, InvalidKeyException,
+      IllegalBlockSizeException, BadPaddingException, InvalidAlgorithmParameterException {
+    ByteBuffer protectedDocument = Operations.decryptData(secretKey, cryptogram, iv);
+    int signatureSize = CipherSuite.forSigningKey(publicKey).getSignatureSize();
+    byte[] signature = new byte[signatureSize];
+    if (protectedDocument.remaining() < signatureSize
+      || !Operations.messageValidation(publicKey, protectedDocument.get(signature), signature)) {
+      BufferPool.shared().release(protectedDocument);
+      throw new TamperedMessageException();
+    }
+    return protectedDocument;
+  }
+
+  public static ByteBuffer protectWithMac(ByteBuffer message, SecretKey secretKey, SecretKey macKey, byte[] iv)
+      throws InvalidKeyException, NoSuchAlgorithmException, InvalidAlgorithmParameterException,
+      NoSuchPaddingException, IllegalBlockSizeException, BadPaddingException {
+    ByteBuffer protectedDocument = Operations.encryptData(secretKey, null, message, iv, Base.MAC_SIZE);
+    byte[] tag = Operations.hmac(macKey, iv, protectedDocument);
+    int cipherTextLength = protectedDocument.limit();
+    return protectedDocument.limit(cipherTextLength + Base.MAC_SIZE).position(cipherTextLength).put(tag).flip();
+  }
+
+  public static ByteBuffer unprotectWithMac(ByteBuffer cryptogram, SecretKey secretKey, SecretKey macKey, byte[] iv)
+      throws InvalidKeyException, NoSuchAlgorithmException, InvalidAlgorithmParameterException,
+      NoSuchPaddingException, IllegalBlockSizeException, BadPaddingException {
+    if (cryptogram.remaining() < Base.MAC_SIZE)
+      throw new TamperedMessageException();
+    ByteBuffer cipherText = cryptogram.duplicate();
+    cipherText.limit(cipherText.limit() - Base.MAC_SIZE);
+    byte[] tag = new byte[Base.MAC_SIZE];
+    cryptogram.duplicate().position(cipherText.limit()).get(tag);
+
+    if (!MessageDigest.isEqual(tag, Operations.hmac(macKey, iv, cipherText)))
+      throw new TamperedMessageException();
+    return Operations.decryptData(secretKey, cipherText, iv);
+  }
 }
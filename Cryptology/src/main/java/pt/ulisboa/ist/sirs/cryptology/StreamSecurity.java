@@ -0,0 +1,230 @@
+package pt.ulisboa.ist.sirs.cryptology;
+
+import pt.ulisboa.ist.sirs.utils.BufferPool;
+import pt.ulisboa.ist.sirs.utils.exceptions.TamperedMessageException;
+
+import javax.crypto.AEADBadTagException;
+import javax.crypto.Cipher;
+import javax.crypto.SecretKey;
+import javax.crypto.ShortBufferException;
+import javax.crypto.spec.GCMParameterSpec;
+import javax.crypto.spec.SecretKeySpec;
+import java.io.EOFException;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.security.GeneralSecurityException;
+import java.security.MessageDigest;
+import java.security.PrivateKey;
+import java.security.PublicKey;
+
+// Segmented documents: header || AEAD segments || signature || signature length
+// Every segment is sealed under a key derived from the session key and a per document salt, its nonce carries the
+// segment number and a last segment flag so segments cannot be reordered, dropped or truncated. The trailing
+// signature covers the header and every sealed segment, so a document is signed without ever being held in memory.
+public final class StreamSecurity {
+  private static final byte[] MAGIC = "SDS1".getBytes(StandardCharsets.US_ASCII);
+  private static final int SALT_SIZE = 16; // bytes
+  private static final int NONCE_PREFIX_SIZE = Operations.AEAD_NONCE_SIZE - Integer.BYTES - 1; // bytes
+  private static final int HEADER_SIZE = MAGIC.length + Integer.BYTES + SALT_SIZE + NONCE_PREFIX_SIZE; // bytes
+  private static final int TAG_SIZE = Operations.AEAD_TAG_SIZE / 8; // bytes
+  private static final int MAX_SEGMENT_SIZE = 1 << 24; // bytes, bounds what a forged header can make us allocate
+
+  private record Header(ByteBuffer encoded, int segmentSize, SecretKey segmentKey, byte[] noncePrefix) {}
+
+  private StreamSecurity() {}
+
+  public static void protect(FileChannel input, FileChannel output, SecretKey secretKey, PrivateKey privateKey)
+      throws IOException, GeneralSecurityException {
+    protect(input, output, secretKey, privateKey, Base.STREAM_SEGMENT_SIZE);
+  }
+
+  public static void protect(
+    FileChannel input, FileChannel output, SecretKey secretKey, PrivateKey privateKey, int segmentSize
+  ) throws IOException, GeneralSecurityException {
+    if (segmentSize <= 0 || segmentSize > MAX_SEGMENT_SIZE)
+      throw new IllegalArgumentException("Invalid segment size");
+    byte[] salt = new byte[SALT_SIZE];
+    byte[] noncePrefix = new byte[NONCE_PREFIX_SIZE];
+    Operations.NONCES.nextBytes(salt);
+    Operations.NONCES.nextBytes(noncePrefix);
+    ByteBuffer header = ByteBuffer.allocate(HEADER_SIZE)
+      .put(MAGIC).putInt(segmentSize).put(salt).put(noncePrefix)
+      .flip();
+    SecretKey segmentKey = deriveSegmentKey(secretKey, salt);
+
+    BufferPool pool = BufferPool.shared();
+    ByteBuffer plain = pool.acquire(segmentSize);
+    ByteBuffer sealed = pool.acquire(segmentSize + TAG_SIZE);
+    MessageDigest digest = Primitives.digest(Base.HASH_ALG);
+    Cipher cipher = Primitives.cipher(Base.AEAD_CIPHER_ALG);
+    try {
+      digest.update(header.duplicate());
+      writeFully(output, header);
+      int segment = 0;
+      boolean last;
+      do {
+        plain.clear().limit(segmentSize);
+        while (plain.hasRemaining() && input.read(plain) >= 0);
+        last = input.position() >= input.size();
+        plain.flip();
+        sealed.clear();
+        cipher.init(Cipher.ENCRYPT_MODE, segmentKey, segmentNonce(noncePrefix, segment++, last));
+        cipher.doFinal(plain, sealed);
+        sealed.flip();
+        digest.update(sealed.duplicate());
+        writeFully(output, sealed);
+      } while (!last);
+
+      byte[] signature = Operations.signDigest(privateKey, digest.digest());
+      writeFully(
+        output, ByteBuffer.allocate(signature.length + Integer.BYTES).put(signature).putInt(signature.length).flip()
+      );
+    } catch (ShortBufferException e) {
+      throw new IllegalStateException(e);
+    } finally {
+      Primitives.release(cipher);
+      Primitives.release(digest);
+      pool.release(plain);
+      pool.release(sealed);
+    }
+  }
+
+  // Checks the signature and every segment tag, nothing is written
+  public static boolean check(FileChannel input, SecretKey secretKey, PublicKey publicKey)
+      throws IOException, GeneralSecurityException {
+    MessageDigest digest = Primitives.digest(Base.HASH_ALG);
+    try {
+      long bodyEnd = bodyEnd(input);
+      Header header = readHeader(input, secretKey);
+      digest.update(header.encoded().duplicate());
+      openSegments(input, null, header, bodyEnd, digest);
+      return Operations.verifyDigest(publicKey, digest.digest(), readSignature(input, bodyEnd));
+    } catch (TamperedMessageException | EOFException e) {
+      return false;
+    } finally {
+      Primitives.release(digest);
+    }
+  }
+
+  // Like Security.unprotect the signature is left to check, segment tags still reject any tampered or cut document
+  public static void unprotect(FileChannel input, FileChannel output, SecretKey secretKey)
+      throws IOException, GeneralSecurityException {
+    long bodyEnd = bodyEnd(input);
+    openSegments(input, output, readHeader(input, secretKey), bodyEnd, null);
+  }
+
+  public static boolean isSegmented(FileChannel input) throws IOException {
+    if (input.size() < HEADER_SIZE)
+      return false;
+    ByteBuffer magic = ByteBuffer.allocate(MAGIC.length);
+    readFully(input, magic, 0);
+    return MessageDigest.isEqual(magic.array(), MAGIC);
+  }
+
+  private static void openSegments(
+    FileChannel input, FileChannel output, Header header, long bodyEnd, MessageDigest digest
+  ) throws IOException, GeneralSecurityException {
+    BufferPool pool = BufferPool.shared();
+    ByteBuffer sealed = pool.acquire(header.segmentSize() + TAG_SIZE);
+    ByteBuffer plain = pool.acquire(header.segmentSize());
+    Cipher cipher = Primitives.cipher(Base.AEAD_CIPHER_ALG);
+    try {
+      long position = HEADER_SIZE;
+      int segment = 0;
+      boolean last;
+      do {
+        int length = (int) Math.min(header.segmentSize() + TAG_SIZE, bodyEnd - position);
+        if (length < TAG_SIZE)
+          throw new TamperedMessageException();
+        last = position + length == bodyEnd;
+        sealed.clear().limit(length);
+        readFully(input, sealed, position);
+        sealed.flip();
+        if (digest != null)
+          digest.update(sealed.duplicate());
+        plain.clear();
+        cipher.init(Cipher.DECRYPT_MODE, header.segmentKey(), segmentNonce(header.noncePrefix(), segment++, last));
+        cipher.doFinal(sealed, plain);
+        if (output != null)
+          writeFully(output, plain.flip());
+        position += length;
+      } while (!last);
+    } catch (AEADBadTagException | ShortBufferException e) {
+      throw new TamperedMessageException();
+    } finally {
+      Primitives.release(cipher);
+      pool.release(sealed);
+      pool.release(plain);
+    }
+  }
+
+  private static Header readHeader(FileChannel input, SecretKey secretKey)
+      throws IOException, GeneralSecurityException {
+    ByteBuffer header = ByteBuffer.allocate(HEADER_SIZE);
+    readFully(input, header, 0);
+    header.flip();
+    byte[] magic = new byte[MAGIC.length];
+    byte[] salt = new byte[SALT_SIZE];
+    byte[] noncePrefix = new byte[NONCE_PREFIX_SIZE];
+    int segmentSize = header.duplicate().get(magic).getInt();
+    if (!MessageDigest.isEqual(magic, MAGIC) || segmentSize <= 0 || segmentSize > MAX_SEGMENT_SIZE)
+      throw new TamperedMessageException();
+    header.duplicate().position(MAGIC.length + Integer.BYTES).get(salt).get(noncePrefix);
+    return new Header(header, segmentSize, deriveSegmentKey(secretKey, salt), noncePrefix);
+  }
+
+  // Offset where the signature starts, the body holds at least the header and one empty segment
+  private static long bodyEnd(FileChannel input) throws IOException {
+    long size = input.size();
+    if (size < HEADER_SIZE + TAG_SIZE + Integer.BYTES)
+      throw new TamperedMessageException();
+    ByteBuffer length = ByteBuffer.allocate(Integer.BYTES);
+    readFully(input, length, size - Integer.BYTES);
+    int signatureLength = length.flip().getInt();
+    if (signatureLength <= 0 || signatureLength > size - Integer.BYTES - HEADER_SIZE - TAG_SIZE)
+      throw new TamperedMessageException();
+    return size - Integer.BYTES - signatureLength;
+  }
+
+  private static byte[] readSignature(FileChannel input, long bodyEnd) throws IOException {
+    ByteBuffer signature = ByteBuffer.allocate((int) (input.size() - Integer.BYTES - bodyEnd));
+    readFully(input, signature, bodyEnd);
+    return signature.array();
+  }
+
+  private static SecretKey deriveSegmentKey(SecretKey secretKey, byte[] salt) throws GeneralSecurityException {
+    return new SecretKeySpec(
+      Operations.hmac(
+        new SecretKeySpec(secretKey.getEncoded(), Base.MAC_ALG), Base.DOCUMENT_STREAM_LABEL.getBytes(), salt
+      ),
+      Base.SYMMETRIC_ALG
+    );
+  }
+
+  private static GCMParameterSpec segmentNonce(byte[] noncePrefix, int segment, boolean last) {
+    if (segment < 0)
+      throw new IllegalStateException("Too many segments");
+    return new GCMParameterSpec(
+      Operations.AEAD_TAG_SIZE,
+      ByteBuffer.allocate(Operations.AEAD_NONCE_SIZE)
+        .put(noncePrefix).putInt(segment).put((byte) (last ? 1 : 0))
+        .array()
+    );
+  }
+
+  private static void readFully(FileChannel input, ByteBuffer buffer, long position) throws IOException {
+    while (buffer.hasRemaining()) {
+      int count = input.read(buffer, position);
+      if (count < 0)
+        throw new EOFException();
+      position += count;
+    }
+  }
+
+  private static void writeFully(FileChannel output, ByteBuffer buffer) throws IOException {
+    while (buffer.hasRemaining())
+      output.write(buffer);
+  }
+}
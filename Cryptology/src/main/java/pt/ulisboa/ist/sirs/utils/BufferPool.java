@@ -0,0 +1,77 @@
+package pt.ulisboa.ist.sirs.utils;
+
+import java.nio.ByteBuffer;
+import java.util.Locale;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicInteger;
+
+public final class BufferPool {
+  public static final String MODE_VARIABLE = "buffer-pool";
+  private static final int MIN_SIZE_CLASS = 10; // 1 KiB
+  private static final int MAX_SIZE_CLASS = 22; // 4 MiB
+  private static final int MAX_IDLE = Math.max(4, Runtime.getRuntime().availableProcessors() * 4);
+  private static final BufferPool SHARED = new BufferPool(
+    "direct".equals(String.valueOf(System.getenv(MODE_VARIABLE)).toLowerCase(Locale.ROOT))
+  );
+
+  private final boolean direct;
+  private final Queue<ByteBuffer>[] idle;
+  private final AtomicInteger[] sizes;
+
+  @SuppressWarnings("unchecked")
+  public BufferPool(boolean direct) {
+    this.direct = direct;
+    this.idle = new Queue[MAX_SIZE_CLASS - MIN_SIZE_CLASS + 1];
+    this.sizes = new AtomicInteger[idle.length];
+    for (int i = 0; i < idle.length; i++) {
+      idle[i] = new ConcurrentLinkedQueue<>();
+      sizes[i] = new AtomicInteger();
+    }
+  }
+
+  // Heap buffers by default, direct ones when the environment asks for them
+  public static BufferPool shared() {
+    return SHARED;
+  }
+
+  public boolean isDirect() {
+    return direct;
+  }
+
+  private static int sizeClass(int capacity) {
+    return Math.max(MIN_SIZE_CLASS, 32 - Integer.numberOfLeadingZeros(Math.max(capacity, 1) - 1));
+  }
+
+  // Returned buffers are cleared and limited to the requested capacity
+  public ByteBuffer acquire(int capacity) {
+    int sizeClass = sizeClass(capacity);
+    if (sizeClass > MAX_SIZE_CLASS)
+      return allocate(capacity);
+    ByteBuffer buffer = idle[sizeClass - MIN_SIZE_CLASS].poll();
+    if (buffer == null)
+      buffer = allocate(1 << sizeClass);
+    else
+      sizes[sizeClass - MIN_SIZE_CLASS].decrementAndGet();
+    buffer.clear().limit(capacity);
+    return buffer;
+  }
+
+  // Only buffers this pool could have handed out are kept, anything else is left to the garbage collector
+  public void release(ByteBuffer buffer) {
+    int capacity = buffer.capacity();
+    int sizeClass = sizeClass(capacity);
+    if (buffer.isDirect() != direct || capacity != 1 << sizeClass || sizeClass > MAX_SIZE_CLASS)
+      return;
+    AtomicInteger size = sizes[sizeClass - MIN_SIZE_CLASS];
+    if (size.incrementAndGet() > MAX_IDLE) {
+      size.decrementAndGet();
+      return;
+    }
+    idle[sizeClass - MIN_SIZE_CLASS].offer(buffer);
+  }
+
+  private ByteBuffer allocate(int capacity) {
+    return direct ? ByteBuffer.allocateDirect(capacity) : ByteBuffer.allocate(capacity);
+  }
+}
@@ -0,0 +1,107 @@
+package pt.ulisboa.ist.sirs.utils;
+
+import java.security.SecureRandom;
+import java.time.Clock;
+import java.time.Duration;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+
+public final class ChallengeRegistry {
+  public static final Duration DEFAULT_DEADLINE = Duration.ofSeconds(30);
+  private static final SecureRandom CHALLENGES = new SecureRandom();
+
+  private record Challenge(long value, long deadline) {}
+
+  private final Map<String, Challenge> pending = new ConcurrentHashMap<>();
+  private final AtomicLong nextSweep = new AtomicLong();
+  private final LongAdder issued = new LongAdder();
+  private final LongAdder answered = new LongAdder();
+  private final LongAdder rejected = new LongAdder();
+  private final LongAdder expired = new LongAdder();
+  private final Clock clock;
+  private final long deadline;
+
+  public ChallengeRegistry() {
+    this(DEFAULT_DEADLINE, Clock.systemUTC());
+  }
+
+  public ChallengeRegistry(Duration deadline, Clock clock) {
+    if (deadline.isNegative() || deadline.isZero())
+      throw new IllegalArgumentException("Challenges need a positive deadline");
+    this.deadline = deadline.toMillis();
+    this.clock = clock;
+    this.nextSweep.set(clock.millis() + this.deadline);
+  }
+
+  // A new challenge replaces whatever the scope still had pending
+  public long issue(String scope) {
+    long now = clock.millis();
+    sweep(now);
+    long value = CHALLENGES.nextLong();
+    pending.put(scope, new Challenge(value, now + deadline));
+    issued.increment();
+    return value;
+  }
+
+  // Each challenge gets a single answer, right or wrong it is gone afterwards
+  public boolean answer(String scope, long value) {
+    Challenge challenge = pending.remove(scope);
+    if (challenge == null) {
+      rejected.increment();
+      return false;
+    }
+    if (challenge.deadline() < clock.millis()) {
+      expired.increment();
+      return false;
+    }
+    if (challenge.value() != value) {
+      rejected.increment();
+      return false;
+    }
+    answered.increment();
+    return true;
+  }
+
+  public int pending() {
+    return pending.size();
+  }
+
+  public long issued() {
+    return issued.sum();
+  }
+
+  public long answered() {
+    return answered.sum();
+  }
+
+  public long rejected() {
+    return rejected.sum();
+  }
+
+  public long expired() {
+    return expired.sum();
+  }
+
+  @Override
+  public String toString() {
+    return String.format(
+      "challenges: %d pending, %d issued, %d answered, %d rejected, %d expired",
+      pending(), issued(), answered(), rejected(), expired()
+    );
+  }
+
+  // Abandoned handshakes are dropped at most once per deadline, by whichever caller wins the race
+  private void sweep(long now) {
+    long scheduled = nextSweep.get();
+    if (now < scheduled || !nextSweep.compareAndSet(scheduled, now + deadline))
+      return;
+    pending.entrySet().removeIf(entry -> {
+      if (entry.getValue().deadline() >= now)
+        return false;
+      expired.increment();
+      return true;
+    });
+  }
+}
@@ -0,0 +1,79 @@
+package pt.ulisboa.ist.sirs.utils;
+
+import io.grpc.Drainable;
+import io.grpc.KnownLength;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+
+// gRPC sizes the frame from available() and drains straight from the buffer, which goes back to the pool after
+public final class PooledBufferStream extends InputStream implements KnownLength, Drainable {
+  private static final int DRAIN_CHUNK = 8192;
+  private final BufferPool pool;
+  private ByteBuffer buffer;
+
+  public PooledBufferStream(ByteBuffer buffer, BufferPool pool) {
+    this.buffer = buffer;
+    this.pool = pool;
+  }
+
+  @Override
+  public int available() {
+    return buffer == null ? 0 : buffer.remaining();
+  }
+
+  @Override
+  public int read() {
+    if (available() == 0) {
+      close();
+      return -1;
+    }
+    return buffer.get() & 0xFF;
+  }
+
+  @Override
+  public int read(byte[] target, int offset, int length) {
+    if (length == 0)
+      return 0;
+    int count = Math.min(length, available());
+    if (count == 0) {
+      close();
+      return -1;
+    }
+    buffer.get(target, offset, count);
+    return count;
+  }
+
+  @Override
+  public int drainTo(OutputStream target) throws IOException {
+    int count = available();
+    if (count == 0) {
+      close();
+      return 0;
+    }
+    if (buffer.hasArray()) {
+      target.write(buffer.array(), buffer.arrayOffset() + buffer.position(), count);
+      buffer.position(buffer.limit());
+    } else {
+      byte[] chunk = new byte[Math.min(count, DRAIN_CHUNK)];
+      while (buffer.hasRemaining()) {
+        int length = Math.min(chunk.length, buffer.remaining());
+        buffer.get(chunk, 0, length);
+        target.write(chunk, 0, length);
+      }
+    }
+    close();
+    return count;
+  }
+
+  @Override
+  public synchronized void close() {
+    if (buffer == null)
+      return;
+    ByteBuffer released = buffer;
+    buffer = null;
+    pool.release(released);
+  }
+}
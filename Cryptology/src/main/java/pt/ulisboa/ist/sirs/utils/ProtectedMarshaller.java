@@ -0,0 +1,93 @@
+package pt.ulisboa.ist.sirs.utils;
+
+import com.google.protobuf.CodedOutputStream;
+import com.google.protobuf.InvalidProtocolBufferException;
+import com.google.protobuf.MessageLite;
+import io.grpc.KnownLength;
+import io.grpc.MethodDescriptor;
+import io.grpc.Status;
+import io.grpc.StatusRuntimeException;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+
+public final class ProtectedMarshaller<T extends MessageLite> implements MethodDescriptor.Marshaller<T> {
+  // Takes a flipped buffer and returns a pooled, flipped one, the input stays owned by the caller
+  @FunctionalInterface
+  public interface Transform {
+    ByteBuffer apply(ByteBuffer input) throws Exception;
+  }
+
+  private final T message;
+  private final Transform protect;
+  private final Transform unprotect;
+  private final BufferPool pool;
+
+  // Transforms allocate from the shared pool, so their buffers are released back into it
+  public ProtectedMarshaller(T message, Transform protect, Transform unprotect) {
+    this.message = message;
+    this.protect = protect;
+    this.unprotect = unprotect;
+    this.pool = BufferPool.shared();
+  }
+
+  @Override
+  public InputStream stream(T value) {
+    ByteBuffer plain = pool.acquire(value.getSerializedSize());
+    try {
+      CodedOutputStream output = CodedOutputStream.newInstance(plain);
+      value.writeTo(output);
+      output.flush();
+      plain.flip();
+      return new PooledBufferStream(protect.apply(plain), pool);
+    } catch (Exception e) {
+      throw new StatusRuntimeException(Status.INTERNAL.withDescription(Arrays.toString(e.getStackTrace())));
+    } finally {
+      pool.release(plain);
+    }
+  }
+
+  @Override
+  @SuppressWarnings("unchecked")
+  public T parse(InputStream inputStream) {
+    ByteBuffer cryptogram = null;
+    ByteBuffer plain = null;
+    try {
+      cryptogram = read(inputStream);
+      plain = unprotect.apply(cryptogram);
+      return (T) message.getParserForType().parseFrom(plain);
+    } catch (InvalidProtocolBufferException e) {
+      throw Status.INTERNAL.withDescription("Invalid protobuf byte sequence").withCause(e).asRuntimeException();
+    } catch (Exception e) {
+      throw new RuntimeException(e);
+    } finally {
+      if (cryptogram != null)
+        pool.release(cryptogram);
+      if (plain != null)
+        pool.release(plain);
+    }
+  }
+
+  // gRPC hands over known length streams, anything else is read whole
+  private ByteBuffer read(InputStream inputStream) throws IOException {
+    if (!(inputStream instanceof KnownLength) || pool.isDirect()) {
+      byte[] bytes = inputStream.readAllBytes();
+      ByteBuffer buffer = pool.acquire(bytes.length);
+      buffer.put(bytes).flip();
+      return buffer;
+    }
+    int length = inputStream.available();
+    ByteBuffer buffer = pool.acquire(length);
+    int offset = 0;
+    while (offset < length) {
+      int count = inputStream.read(buffer.array(), buffer.arrayOffset() + offset, length - offset);
+      if (count < 0)
+        break;
+      offset += count;
+    }
+    buffer.limit(offset);
+    return buffer;
+  }
+}
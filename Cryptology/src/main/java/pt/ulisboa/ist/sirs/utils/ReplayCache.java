@@ -0,0 +1,67 @@
+package pt.ulisboa.ist.sirs.utils;
+
+import pt.ulisboa.ist.sirs.utils.exceptions.ReplayAttackException;
+
+import java.time.Clock;
+import java.time.Duration;
+import java.time.Instant;
+import java.time.OffsetDateTime;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+public final class ReplayCache {
+  public static final Duration DEFAULT_WINDOW = Duration.ofMinutes(5);
+  private static final int BUCKETS_PER_WINDOW = 10;
+
+  private final ConcurrentSkipListMap<Long, Set<String>> buckets = new ConcurrentSkipListMap<>();
+  private final AtomicLong oldestBucket = new AtomicLong(Long.MIN_VALUE);
+  private final Clock clock;
+  private final long windowMillis;
+  private final long bucketMillis;
+
+  public ReplayCache() {
+    this(DEFAULT_WINDOW);
+  }
+
+  public ReplayCache(Duration window) {
+    this(window, Clock.systemUTC());
+  }
+
+  public ReplayCache(Duration window, Clock clock) {
+    if (window.toMillis() < BUCKETS_PER_WINDOW)
+      throw new IllegalArgumentException("Replay window is too small");
+    this.clock = clock;
+    this.windowMillis = window.toMillis();
+    this.bucketMillis = windowMillis / BUCKETS_PER_WINDOW;
+  }
+
+  // Timestamps outside the freshness window are rejected, within it each may be seen only once per scope
+  public void check(String scope, OffsetDateTime timestamp) {
+    long now = clock.millis();
+    Instant instant = timestamp.toInstant();
+    long millis = instant.toEpochMilli();
+    if (Math.abs(now - millis) > windowMillis)
+      throw new ReplayAttackException();
+
+    evict(now);
+    Set<String> bucket = buckets.computeIfAbsent(millis / bucketMillis, k -> ConcurrentHashMap.newKeySet());
+    if (!bucket.add(scope + "@" + instant))
+      throw new ReplayAttackException();
+  }
+
+  public int size() {
+    return buckets.values().stream().mapToInt(Set::size).sum();
+  }
+
+  private void evict(long now) {
+    long horizon = (now - windowMillis) / bucketMillis;
+    long oldest = oldestBucket.get();
+    if (oldest >= horizon || !oldestBucket.compareAndSet(oldest, horizon))
+      return;
+    Map<Long, Set<String>> expired = buckets.headMap(horizon);
+    expired.clear();
+  }
+}
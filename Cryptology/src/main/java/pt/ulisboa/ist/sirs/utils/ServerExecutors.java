@@ -0,0 +1,75 @@
+package pt.ulisboa.ist.sirs.utils;
+
+import java.util.Locale;
+import java.util.Optional;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicInteger;
+
+public final class ServerExecutors {
+  public static final String MODE_VARIABLE = "server-executor";
+  public static final String THREADS_VARIABLE = "server-executor-threads";
+
+  public enum Mode {
+    DEFAULT, FIXED, VIRTUAL
+  }
+
+  private ServerExecutors() {}
+
+  public static Mode modeFromEnvironment() {
+    String mode = System.getenv(MODE_VARIABLE);
+    return mode == null ? Mode.DEFAULT : Mode.valueOf(mode.trim().toUpperCase(Locale.ROOT));
+  }
+
+  // An empty result leaves gRPC on its default cached thread pool
+  public static Optional<ExecutorService> fromEnvironment(String name) {
+    return create(modeFromEnvironment(), name);
+  }
+
+  public static Optional<ExecutorService> create(Mode mode, String name) {
+    return switch (mode) {
+      case DEFAULT -> Optional.empty();
+      case FIXED -> Optional.of(fixed(name));
+      case VIRTUAL -> Optional.of(virtual().orElseGet(() -> fixed(name)));
+    };
+  }
+
+  // Virtual is opt-in, callers report when the runtime lacks it and the fixed pool is used instead
+  public static boolean supportsVirtualThreads() {
+    try {
+      Executors.class.getMethod("newVirtualThreadPerTaskExecutor");
+      return true;
+    } catch (NoSuchMethodException e) {
+      return false;
+    }
+  }
+
+  // Virtual threads are looked up reflectively so the servers still run on runtimes without them
+  private static Optional<ExecutorService> virtual() {
+    try {
+      return Optional.of(
+        (ExecutorService) Executors.class.getMethod("newVirtualThreadPerTaskExecutor").invoke(null)
+      );
+    } catch (ReflectiveOperationException | UnsupportedOperationException e) {
+      return Optional.empty();
+    }
+  }
+
+  private static ExecutorService fixed(String name) {
+    String threads = System.getenv(THREADS_VARIABLE);
+    return Executors.newFixedThreadPool(
+      threads == null ? Runtime.getRuntime().availableProcessors() * 8 : Integer.parseInt(threads),
+      threadFactory(name)
+    );
+  }
+
+  private static ThreadFactory threadFactory(String name) {
+    AtomicInteger count = new AtomicInteger();
+    return runnable -> {
+      Thread thread = new Thread(runnable, name + "-" + count.incrementAndGet());
+      thread.setDaemon(true);
+      return thread;
+    };
+  }
+}
@@ -0,0 +1,7 @@
+package pt.ulisboa.ist.sirs.utils.exceptions;
+
+public class InvalidResumptionTicketException extends RuntimeException {
+  public InvalidResumptionTicketException() {
+    super("Invalid or expired resumption ticket.");
+  }
+}
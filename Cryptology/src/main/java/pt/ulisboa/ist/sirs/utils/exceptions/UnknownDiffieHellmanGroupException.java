@@ -0,0 +1,7 @@
+package pt.ulisboa.ist.sirs.utils.exceptions;
+
+public class UnknownDiffieHellmanGroupException extends RuntimeException {
+  public UnknownDiffieHellmanGroupException() {
+    super("Diffie-Hellman key is not in a known group.");
+  }
+}
@@ -0,0 +1,7 @@
+package pt.ulisboa.ist.sirs.utils.exceptions;
+
+public class UnsupportedCipherSuiteException extends RuntimeException {
+  public UnsupportedCipherSuiteException() {
+    super("Unsupported cipher suite.");
+  }
+}
@@ -21,14 +21,18 @@ import java.time.LocalDateTime;
 import java.time.OffsetDateTime;
 import java.util.Collections;
 import java.util.List;
+import java.util.Optional;
 import java.util.Scanner;
+import java.util.concurrent.ExecutorService;
 
 import io.grpc.*;
+import pt.ulisboa.ist.sirs.utils.ServerExecutors;
 import pt.ulisboa.ist.sirs.utils.Utils;
 
 public class DatabaseServer {
   private final boolean debug;
   private final Server server;
+  private final Optional<ExecutorService> executor;
   private final DatabaseManager state;
 
   public DatabaseServer(List<String> args, boolean debug) throws Exception {
@@ -53,7 +57,7 @@ public class DatabaseServer {
         args.get(7),
         new AuthenticationClientCryptographicManager(),
         debug)
-    .build());
+    .build(), cryptoCore.getAuthorizations());
 
     try {
       test(state);
@@ -62,10 +66,18 @@ public class DatabaseServer {
     }
 
     final BindableService databaseService = new DatabaseServerImpl(state, cryptoCore, debug).getService();
-    this.server = Grpc.newServerBuilderForPort(
+    // Requests are parsed inside the interceptor's call context so the marshallers can tell which client sent them
+    final ServerBuilder<?> serverBuilder = Grpc.newServerBuilderForPort(
       databasePort,
       TlsServerCredentials.newBuilder().keyManager(new File(args.get(7)), new File(args.get(8))).build())
-      .addService(ServerInterceptors.intercept(databaseService, crypto)).build();
+      .addService(ServerInterceptors.intercept(
+        ServerInterceptors.useInputStreamMessages(databaseService.bindService()), crypto));
+    // Handlers block on JDBC, so they may run on virtual threads while DatabaseManager bounds database concurrency
+    if (ServerExecutors.modeFromEnvironment() == ServerExecutors.Mode.VIRTUAL && !ServerExecutors.supportsVirtualThreads())
+      System.out.println("Database: Virtual threads are not available on this runtime, falling back to a fixed thread pool");
+    this.executor = ServerExecutors.fromEnvironment("database-server");
+    executor.ifPresent(serverBuilder::executor);
+    this.server = serverBuilder.build();
   }
 
   private void serverStartup() throws IOException {
@@ -115,6 +127,7 @@ public class DatabaseServer {
         + state.getService().getServerPort());
     state.shutDown();
     server.shutdownNow();
+    executor.ifPresent(ExecutorService::shutdownNow);
     System.out.println("Shutting down.");
     System.exit(0);
   }
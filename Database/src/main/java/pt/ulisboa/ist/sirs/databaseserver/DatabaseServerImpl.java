@@ -2,24 +2,27 @@ package pt.ulisboa.ist.sirs.databaseserver;
 
 import com.google.protobuf.ByteString;
 import io.grpc.*;
+import io.grpc.stub.ServerCallStreamObserver;
 import io.grpc.stub.StreamObserver;
 import pt.ulisboa.ist.sirs.contract.databaseserver.DatabaseServer.*;
+import pt.ulisboa.ist.sirs.contract.databaseserver.DatabaseServiceGrpc;
 import pt.ulisboa.ist.sirs.contract.databaseserver.DatabaseServiceGrpc.DatabaseServiceImplBase;
 import pt.ulisboa.ist.sirs.databaseserver.dto.MovementDto;
+import pt.ulisboa.ist.sirs.databaseserver.dto.MovementPageDto;
 import pt.ulisboa.ist.sirs.databaseserver.dto.TicketDto;
 import pt.ulisboa.ist.sirs.databaseserver.grpc.crypto.AbstractCryptographicDatabaseServiceImpl;
 import pt.ulisboa.ist.sirs.databaseserver.grpc.crypto.DatabaseServerCryptographicManager;
 import pt.ulisboa.ist.sirs.databaseserver.repository.DatabaseManager;
+import pt.ulisboa.ist.sirs.utils.ReplayCache;
 import pt.ulisboa.ist.sirs.utils.Utils;
-import pt.ulisboa.ist.sirs.cryptology.Base;
-import pt.ulisboa.ist.sirs.utils.exceptions.ReplayAttackException;
+import pt.ulisboa.ist.sirs.cryptology.IdentityCache;
 import pt.ulisboa.ist.sirs.utils.exceptions.TamperedMessageException;
 
 import java.math.BigDecimal;
 import java.time.LocalDateTime;
 import java.time.OffsetDateTime;
-import java.util.ArrayList;
 import java.util.List;
+import java.util.function.IntFunction;
 
 public final class DatabaseServerImpl extends DatabaseServiceImplBase {
   private abstract static class DatabaseServiceImpl extends AbstractCryptographicDatabaseServiceImpl implements BindableService {
@@ -29,7 +32,9 @@ public final class DatabaseServerImpl extends DatabaseServiceImplBase {
   private final boolean debug;
   private final DatabaseManager databaseManager;
   private final DatabaseServerCryptographicManager crypto;
-  private final List<OffsetDateTime> timestamps = new ArrayList<>();
+  private static final int DEFAULT_MOVEMENTS_PAGE_SIZE = 100;
+  private static final int MAX_MOVEMENTS_PAGE_SIZE = 1000;
+  private final ReplayCache replayCache = new ReplayCache();
   public final BindableService service;
 
   public DatabaseServerImpl(DatabaseManager databaseManager, DatabaseServerCryptographicManager crypto, boolean debug) {
@@ -53,26 +58,35 @@ public final class DatabaseServerImpl extends DatabaseServiceImplBase {
     return debug;
   }
 
-  public List<OffsetDateTime> getTimestamps() {
-    return this.timestamps;
+  public void checkForReplayAttack(OffsetDateTime timestamp) {
+    replayCache.check(DatabaseServiceGrpc.getAuthenticateMethod().getFullMethodName(), timestamp);
   }
 
-  public void addTimestamp(OffsetDateTime timestamp) {
-    this.timestamps.add(timestamp);
+  // Each ticket and timestamp pair yields its own proof, so resumptions are only unique per proof
+  public void checkForReplayAttack(OffsetDateTime timestamp, byte[] proof) {
+    replayCache.check(DatabaseServiceGrpc.getResumeMethod().getFullMethodName() + Utils.byteToHex(proof), timestamp);
   }
 
-  public boolean oldTimestampString(OffsetDateTime timestamp) {
-    return getTimestamps().contains(timestamp);
+  private static int movementsPageSize(int requested) {
+    return requested <= 0 ? DEFAULT_MOVEMENTS_PAGE_SIZE : Math.min(requested, MAX_MOVEMENTS_PAGE_SIZE);
+  }
+
+  private static List<GetMovementsResponse.Movement> toMovementsResponse(List<MovementDto> movements) {
+    return movements.stream().map(m -> GetMovementsResponse.Movement.newBuilder()
+      .setId(m.movementRef().toString())
+      .setCurrency(m.currency())
+      .setDate(m.date().toString())
+      .setValue(m.amount().toString())
+      .setDescription(m.description())
+      .build()
+    ).toList();
   }
 
   @Override
   public void authenticate(AuthenticateRequest request, StreamObserver<AuthenticateResponse> responseObserver) {
     try {
       // Needham-Schroeder step 3
-      String timestampString = request.getTimestamp();
-      if (oldTimestampString(OffsetDateTime.parse(timestampString)))
-        throw new ReplayAttackException();
-      addTimestamp(OffsetDateTime.parse(timestampString));
+      checkForReplayAttack(OffsetDateTime.parse(request.getTimestamp()));
       TicketDto ticket = crypto.unbundleTicket(request.getTicket().toByteArray());
 
       // Store session key and session iv
@@ -82,7 +96,7 @@ public final class DatabaseServerImpl extends DatabaseServiceImplBase {
       responseObserver.onNext(
         AuthenticateResponse.newBuilder()
           .setServerChallenge(crypto.initializeNonce())
-          .setServerCert(ByteString.copyFrom(Utils.readBytesFromFile(Base.CryptographicCore.getCertPath())))
+          .setServerCert(ByteString.copyFrom(IdentityCache.shared().ownCertificate()))
       .build());
       responseObserver.onCompleted();
     } catch (Exception e) {
@@ -94,12 +108,20 @@ public final class DatabaseServerImpl extends DatabaseServiceImplBase {
   public void stillAlive(StillAliveRequest request, StreamObserver<StillAliveResponse> responseObserver) {
     try {
       // Needham-Schroeder step 5
-      if (!crypto.checkNonce(request.getServerChallenge() + 1))
+      if (!crypto.checkNonce(request.getServerChallenge() + 1)) {
+        if (isDebug())
+          System.out.println("\tDatabaseServerImpl: " + crypto.getChallenges());
         throw new TamperedMessageException();
+      }
       crypto.validateSession(request.getPublicKey().toByteArray());
+      ProtectionMode protectionMode = crypto.negotiateProtectionMode(request.getProtectionModesList());
 
+      // Response is still signed, the negotiated mode applies from the next request on
       responseObserver.onNext(
-        StillAliveResponse.newBuilder().setClientChallenge(request.getClientChallenge() + 1)
+        StillAliveResponse.newBuilder()
+          .setClientChallenge(request.getClientChallenge() + 1)
+          .setProtectionMode(protectionMode)
+          .setResumptionTicket(ByteString.copyFrom(crypto.issueResumptionTicket()))
       .build());
       responseObserver.onCompleted();
     } catch (Exception e) {
@@ -107,6 +129,33 @@ public final class DatabaseServerImpl extends DatabaseServiceImplBase {
     }
   }
 
+  @Override
+  public void resume(ResumeRequest request, StreamObserver<ResumeResponse> responseObserver) {
+    try {
+      if (isDebug())
+        System.out.println("\tDatabaseServerImpl: resume session");
+
+      // Replaces Needham-Schroeder steps 3 to 5 for clients that already completed them once
+      byte[] proof = request.getProof().toByteArray();
+      checkForReplayAttack(OffsetDateTime.parse(request.getTimestamp()), proof);
+      ProtectionMode protectionMode = crypto.resumeSession(
+        request.getTicket().toByteArray(), request.getTimestamp(), proof
+      );
+
+      // Response is signed like stillAlive's, with a fresh ticket for the next reconnect
+      responseObserver.onNext(
+        ResumeResponse.newBuilder()
+          .setProtectionMode(protectionMode)
+          .setResumptionTicket(ByteString.copyFrom(crypto.issueResumptionTicket()))
+      .build());
+      responseObserver.onCompleted();
+      if (isDebug())
+        System.out.println("\tDatabaseServerImpl: resume session successful");
+    } catch (Exception e) {
+      responseObserver.onError(Status.ABORTED.withDescription(e.getMessage()).asRuntimeException());
+    }
+  }
+
   public void createAccount(CreateAccountRequest request, StreamObserver<Ack> responseObserver) {
     try {
       if (isDebug())
@@ -177,18 +226,23 @@ public final class DatabaseServerImpl extends DatabaseServiceImplBase {
       byte[] password = request.getPassword().toByteArray();
       OffsetDateTime timestamp = OffsetDateTime.parse(request.getTimestamp());
 
-      List<MovementDto> movements = databaseManager.getMovements(username, password, timestamp);
-
-      responseObserver.onNext(GetMovementsResponse.newBuilder().addAllMovements(
-        movements.stream().map(m -> GetMovementsResponse.Movement.newBuilder()
-          .setId(m.movementRef().toString())
-          .setCurrency(m.currency())
-          .setDate(m.date().toString())
-          .setValue(m.amount().toString())
-          .setDescription(m.description())
-          .build()
-        ).toList()
-      ).build());
+      // Without a page size the whole history is returned, as before
+      if (request.getPageSize() <= 0 && request.getCursor().isEmpty()) {
+        List<MovementDto> movements = databaseManager.getMovements(username, password, timestamp);
+        responseObserver.onNext(GetMovementsResponse.newBuilder().addAllMovements(toMovementsResponse(movements)).build());
+      } else {
+        MovementPageDto page = databaseManager.getMovements(
+          username,
+          password,
+          MovementPageDto.decodeCursor(request.getCursor()),
+          movementsPageSize(request.getPageSize()),
+          timestamp
+        );
+        responseObserver.onNext(GetMovementsResponse.newBuilder()
+          .addAllMovements(toMovementsResponse(page.movements()))
+          .setNextCursor(page.nextCursor())
+        .build());
+      }
       responseObserver.onCompleted();
       if (isDebug())
         System.out.println("\tDatabaseServerImpl: get account movements successful");
@@ -197,6 +251,74 @@ public final class DatabaseServerImpl extends DatabaseServiceImplBase {
     }
   }
 
+  public void streamMovements(GetMovementsRequest request, StreamObserver<GetMovementsResponse> responseObserver) {
+    try {
+      if (isDebug())
+        System.out.println("\tDatabaseServerImpl: stream account movements");
+
+      String username = request.getName();
+      byte[] password = request.getPassword().toByteArray();
+      OffsetDateTime timestamp = OffsetDateTime.parse(request.getTimestamp());
+      int pageSize = movementsPageSize(request.getPageSize());
+
+      MovementPageDto first = databaseManager.getMovements(username, password, 0, pageSize, timestamp);
+      new MovementsStream(
+        (ServerCallStreamObserver<GetMovementsResponse>) responseObserver,
+        first,
+        offset -> databaseManager.nextMovements(username, password, offset, pageSize)
+      ).start();
+    } catch (Exception e) {
+      responseObserver.onError(Status.ABORTED.withDescription(e.getMessage()).asRuntimeException());
+    }
+  }
+
+  // Pages are read one short transaction at a time and only while the client keeps up, so a slow
+  // client neither holds a database permit nor makes gRPC buffer its whole history
+  private final class MovementsStream implements Runnable {
+    private final ServerCallStreamObserver<GetMovementsResponse> call;
+    private final IntFunction<MovementPageDto> nextPage;
+    private MovementPageDto page;
+    private boolean done;
+
+    private MovementsStream(ServerCallStreamObserver<GetMovementsResponse> call, MovementPageDto first,
+        IntFunction<MovementPageDto> nextPage) {
+      this.call = call;
+      this.page = first;
+      this.nextPage = nextPage;
+    }
+
+    private void start() {
+      call.setOnCancelHandler(() -> {
+        synchronized (this) {
+          done = true;
+        }
+      });
+      call.setOnReadyHandler(this);
+      run();
+    }
+
+    @Override
+    public synchronized void run() {
+      try {
+        // Every chunk is its own message, so the marshaller protects each one separately
+        while (!done && call.isReady()) {
+          call.onNext(GetMovementsResponse.newBuilder().addAllMovements(toMovementsResponse(page.movements())).build());
+          if (!page.hasNext()) {
+            done = true;
+            call.onCompleted();
+            if (isDebug())
+              System.out.println("\tDatabaseServerImpl: stream account movements successful");
+            return;
+          }
+          page = nextPage.apply(page.nextOffset());
+        }
+      } catch (Exception e) {
+        done = true;
+        call.onError(Status.ABORTED.withDescription(e.getMessage()).asRuntimeException());
+      }
+    }
+  }
+
   public void orderPayment(OrderPaymentRequest request, StreamObserver<Ack> responseObserver) {
     try {
       if (isDebug())
@@ -8,6 +8,7 @@ import java.time.LocalDateTime;
 import java.util.UUID;
 
 @Entity
+@Table(indexes = @Index(columnList = "paymentRefIndex"))
 public class Approval implements Serializable {
   @Id
   @GeneratedValue(strategy = GenerationType.IDENTITY)
@@ -53,6 +54,9 @@ public class Approval implements Serializable {
   @Column(nullable = false, columnDefinition = "bytea")
   private UUID paymentRef;
 
+  @Column(nullable = false, length = BlindIndex.INDEX_LENGTH)
+  private String paymentRefIndex;
+
   @ColumnTransformer(read = """
       pgp_sym_decrypt(
       approvalDate,
@@ -70,9 +74,14 @@ public class Approval implements Serializable {
   public Approval() {
   }
 
+  public static String paymentRefIndex(UUID paymentRef) {
+    return BlindIndex.of("approval.paymentRef", paymentRef);
+  }
+
   public Approval(UUID holder, UUID reference, LocalDateTime date) {
     this.holder = holder;
     this.paymentRef = reference;
+    this.paymentRefIndex = paymentRefIndex(reference);
     this.approvalDate = date;
   }
 
@@ -2,13 +2,21 @@ package pt.ulisboa.ist.sirs.databaseserver.domain;
 
 import javax.persistence.*;
 
+import org.hibernate.annotations.Cache;
+import org.hibernate.annotations.CacheConcurrencyStrategy;
 import org.hibernate.annotations.ColumnTransformer;
+import org.hibernate.annotations.NaturalId;
+import org.hibernate.annotations.NaturalIdCache;
 
 import java.io.Serializable;
 import java.math.BigDecimal;
 import java.util.*;
 
 @Entity
+@Cacheable
+@Cache(usage = CacheConcurrencyStrategy.READ_WRITE, region = "bankAccount")
+@NaturalIdCache(region = "bankAccount.naturalId")
+@Table(indexes = @Index(columnList = "numberIndex", unique = true))
 public class BankAccount implements Serializable {
   @Id
   @GeneratedValue(strategy = GenerationType.IDENTITY)
@@ -40,6 +48,10 @@ public class BankAccount implements Serializable {
   @Column(unique = true, nullable = false, columnDefinition = "bytea")
   private UUID number;
 
+  @NaturalId
+  @Column(nullable = false, length = BlindIndex.INDEX_LENGTH)
+  private String numberIndex;
+
   @ColumnTransformer(read = """
       pgp_sym_decrypt_bytea(
           passwords,
@@ -84,6 +96,7 @@ public class BankAccount implements Serializable {
 
   public BankAccount(byte[] passwords, BigDecimal initialDeposit) {
     this.number = UUID.randomUUID();
+    this.numberIndex = numberIndex(number);
     this.passwords = passwords;
     this.balance = initialDeposit;
     this.currency = "EUR";
@@ -92,6 +105,10 @@ public class BankAccount implements Serializable {
   public BankAccount() {
   }
 
+  public static String numberIndex(UUID number) {
+    return BlindIndex.of("account.number", number);
+  }
+
   public Long getId() {
     return id;
   }
@@ -2,12 +2,23 @@ package pt.ulisboa.ist.sirs.databaseserver.domain;
 
 import javax.persistence.*;
 
+import org.hibernate.annotations.Cache;
+import org.hibernate.annotations.CacheConcurrencyStrategy;
 import org.hibernate.annotations.ColumnTransformer;
+import org.hibernate.annotations.NaturalId;
+import org.hibernate.annotations.NaturalIdCache;
 
 import java.io.Serializable;
 import java.util.UUID;
 
 @Entity
+@Cacheable
+@Cache(usage = CacheConcurrencyStrategy.READ_WRITE, region = "bankAccountHolder")
+@NaturalIdCache(region = "bankAccountHolder.naturalId")
+@Table(indexes = {
+  @Index(columnList = "nameIndex", unique = true),
+  @Index(columnList = "accountNumberIndex")
+})
 public class BankAccountHolder implements Serializable {
   @Id
   @GeneratedValue(strategy = GenerationType.IDENTITY)
@@ -39,6 +50,11 @@ public class BankAccountHolder implements Serializable {
   @Column(unique = true, nullable = false, columnDefinition = "bytea")
   private String name;
 
+  // The name itself is encrypted with a random salt, its blind index is what identifies a holder
+  @NaturalId
+  @Column(nullable = false, length = BlindIndex.INDEX_LENGTH)
+  private String nameIndex;
+
   @ColumnTransformer(read = """
       pgp_sym_decrypt(
           accountNumber,
@@ -53,6 +69,9 @@ public class BankAccountHolder implements Serializable {
   @Column(unique = true, nullable = false, columnDefinition = "bytea")
   private UUID accountNumber;
 
+  @Column(nullable = false, length = BlindIndex.INDEX_LENGTH)
+  private String accountNumberIndex;
+
   @JoinColumn
   @ColumnTransformer(read = """
       pgp_sym_decrypt(
@@ -75,6 +94,17 @@ public class BankAccountHolder implements Serializable {
     this.number = UUID.randomUUID();
     this.accountNumber = accountNumber;
     this.name = holder;
+    this.nameIndex = nameIndex(holder);
+    this.accountNumberIndex = accountNumberIndex(accountNumber);
+  }
+
+  public static String nameIndex(String name) {
+    return BlindIndex.of("holder.name", name);
+  }
+
+  // A reference to the account, so it shares the account's own index and the two tables join on it
+  public static String accountNumberIndex(UUID accountNumber) {
+    return BankAccount.numberIndex(accountNumber);
   }
 
   public void setId(long id) {
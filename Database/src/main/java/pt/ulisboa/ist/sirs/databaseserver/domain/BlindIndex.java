@@ -0,0 +1,53 @@
+package pt.ulisboa.ist.sirs.databaseserver.domain;
+
+import pt.ulisboa.ist.sirs.cryptology.Base;
+import pt.ulisboa.ist.sirs.cryptology.Operations;
+import pt.ulisboa.ist.sirs.utils.Utils;
+
+import javax.crypto.SecretKey;
+import javax.crypto.spec.SecretKeySpec;
+import java.io.File;
+import java.nio.charset.StandardCharsets;
+import java.security.SecureRandom;
+import java.util.UUID;
+
+public final class BlindIndex {
+  public static final int INDEX_LENGTH = 2 * Base.MAC_SIZE; // hex characters
+  private static final String KEY_PATH = Base.CryptographicCore.SELF_DIRECTORY + "blindIndexKey";
+
+  private static final class KeyHolder {
+    private static final SecretKey KEY = loadKey();
+  }
+
+  private BlindIndex() {}
+
+  private static SecretKey loadKey() {
+    try {
+      File keyFile = new File(KEY_PATH);
+      if (!keyFile.exists()) {
+        Base.CryptographicCore.initializeSelfDirectory();
+        byte[] key = new byte[Base.SYMMETRIC_KEY_SIZE];
+        new SecureRandom().nextBytes(key);
+        Utils.writeBytesToFile(key, KEY_PATH);
+      }
+      return new SecretKeySpec(Utils.readBytesFromFile(KEY_PATH), Base.MAC_ALG);
+    } catch (Exception e) {
+      throw new RuntimeException("Could not load blind index key");
+    }
+  }
+
+  // Columns are keyed by name so equal values in different columns do not share an index
+  public static String of(String column, String value) {
+    try {
+      return Utils.byteToHex(Operations.hmac(
+        KeyHolder.KEY, column.getBytes(StandardCharsets.UTF_8), value.getBytes(StandardCharsets.UTF_8)
+      ));
+    } catch (Exception e) {
+      throw new RuntimeException(e.getMessage());
+    }
+  }
+
+  public static String of(String column, UUID value) {
+    return value == null ? null : of(column, value.toString());
+  }
+}
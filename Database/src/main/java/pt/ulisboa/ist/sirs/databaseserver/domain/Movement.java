@@ -14,6 +14,10 @@ import java.util.Optional;
 import java.util.UUID;
 
 @Entity
+@Table(indexes = {
+  @Index(columnList = "accountFromIndex"),
+  @Index(columnList = "accountToIndex")
+})
 public class Movement implements Serializable {
   @Id
   @GeneratedValue(strategy = GenerationType.IDENTITY)
@@ -101,6 +105,9 @@ public class Movement implements Serializable {
   @Column(nullable = false, columnDefinition = "bytea")
   private UUID accountFrom;
 
+  @Column(nullable = false, length = BlindIndex.INDEX_LENGTH)
+  private String accountFromIndex;
+
   @ColumnTransformer(read = """
       pgp_sym_decrypt(
           accountTo,
@@ -115,6 +122,9 @@ public class Movement implements Serializable {
   @Column(columnDefinition = "bytea")
   private UUID accountTo;
 
+  @Column(length = BlindIndex.INDEX_LENGTH)
+  private String accountToIndex;
+
   @ColumnTransformer(read = """
       pgp_sym_decrypt(
           currency,
@@ -132,6 +142,7 @@ public class Movement implements Serializable {
   public Movement(MovementDto movement) {
     this();
     this.accountFrom = movement.accountFrom();
+    this.accountFromIndex = accountIndex(movement.accountFrom());
     this.movementDate = movement.date();
     this.amount = movement.amount();
     this.description = movement.description();
@@ -142,6 +153,8 @@ public class Movement implements Serializable {
     this();
     this.accountFrom = order.accountFrom();
     this.accountTo = order.accountTo();
+    this.accountFromIndex = accountIndex(order.accountFrom());
+    this.accountToIndex = accountIndex(order.accountTo());
     this.movementDate = order.date();
     this.amount = order.amount();
     this.description = order.description();
@@ -152,6 +165,10 @@ public class Movement implements Serializable {
     this.movementNumber = UUID.randomUUID();
   }
 
+  public static String accountIndex(UUID account) {
+    return BlindIndex.of("movement.account", account);
+  }
+
   public void setId(Long id) {
     this.id = id;
   }
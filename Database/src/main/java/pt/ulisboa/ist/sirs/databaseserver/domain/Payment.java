@@ -10,6 +10,10 @@ import java.util.Optional;
 import java.util.UUID;
 
 @Entity
+@Table(indexes = {
+  @Index(columnList = "accountFromIndex, accountToIndex"),
+  @Index(columnList = "paymentRefIndex", unique = true)
+})
 public class Payment implements Serializable {
   @Id
   @GeneratedValue(strategy = GenerationType.IDENTITY)
@@ -40,6 +44,9 @@ public class Payment implements Serializable {
   @Column(nullable = false, columnDefinition = "bytea")
   private UUID accountFrom;
 
+  @Column(nullable = false, length = BlindIndex.INDEX_LENGTH)
+  private String accountFromIndex;
+
   @ColumnTransformer(read = """
       pgp_sym_decrypt(
           accountTo,
@@ -54,6 +61,9 @@ public class Payment implements Serializable {
   @Column(nullable = false, columnDefinition = "bytea")
   private UUID accountTo;
 
+  @Column(nullable = false, length = BlindIndex.INDEX_LENGTH)
+  private String accountToIndex;
+
   @ColumnTransformer(read = """
       pgp_sym_decrypt(
           paymentRef,
@@ -68,6 +78,9 @@ public class Payment implements Serializable {
   @Column(unique = true, nullable = false, columnDefinition = "bytea")
   private final UUID paymentRef = UUID.randomUUID();
 
+  @Column(nullable = false, length = BlindIndex.INDEX_LENGTH)
+  private final String paymentRefIndex = paymentRefIndex(paymentRef);
+
   @ColumnTransformer(read = """
       pgp_sym_decrypt(
           amount,
@@ -159,6 +172,8 @@ public class Payment implements Serializable {
       String currency) {
     this.accountFrom = accountFrom;
     this.accountTo = accountTo;
+    this.accountFromIndex = accountIndex(accountFrom);
+    this.accountToIndex = accountIndex(accountTo);
     this.amount = amount;
     this.requestDate = date;
     this.description = description;
@@ -166,6 +181,14 @@ public class Payment implements Serializable {
     this.currency = currency;
   }
 
+  public static String accountIndex(UUID account) {
+    return BlindIndex.of("payment.account", account);
+  }
+
+  public static String paymentRefIndex(UUID paymentRef) {
+    return BlindIndex.of("payment.paymentRef", paymentRef);
+  }
+
   public Long getId() {
     return id;
   }
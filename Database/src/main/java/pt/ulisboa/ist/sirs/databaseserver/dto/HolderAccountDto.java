@@ -0,0 +1,4 @@
+package pt.ulisboa.ist.sirs.databaseserver.dto;
+
+public record HolderAccountDto(HolderDto holder, BankAccountDto account) {
+}
@@ -0,0 +1,42 @@
+package pt.ulisboa.ist.sirs.databaseserver.dto;
+
+import pt.ulisboa.ist.sirs.databaseserver.repository.exceptions.InvalidCursorException;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Base64;
+import java.util.List;
+
+public record MovementPageDto(List<MovementDto> movements, int nextOffset) {
+  private static final String CURSOR_PREFIX = "movements:";
+
+  public boolean hasNext() {
+    return nextOffset > 0;
+  }
+
+  // Cursors are opaque to clients, only the database server reads them back
+  public String nextCursor() {
+    return hasNext() ? encodeCursor(nextOffset) : "";
+  }
+
+  public static String encodeCursor(int offset) {
+    return Base64.getUrlEncoder().withoutPadding().encodeToString(
+      (CURSOR_PREFIX + offset).getBytes(StandardCharsets.UTF_8)
+    );
+  }
+
+  public static int decodeCursor(String cursor) {
+    if (cursor == null || cursor.isEmpty())
+      return 0;
+    try {
+      String decoded = new String(Base64.getUrlDecoder().decode(cursor), StandardCharsets.UTF_8);
+      if (!decoded.startsWith(CURSOR_PREFIX))
+        throw new InvalidCursorException();
+      int offset = Integer.parseInt(decoded.substring(CURSOR_PREFIX.length()));
+      if (offset < 0)
+        throw new InvalidCursorException();
+      return offset;
+    } catch (IllegalArgumentException e) {
+      throw new InvalidCursorException();
+    }
+  }
+}
@@ -6,10 +6,11 @@ import pt.ulisboa.ist.sirs.contract.enums.Enums;
 import pt.ulisboa.ist.sirs.contract.namingserver.NamingServer;
 import pt.ulisboa.ist.sirs.cryptology.Base;
 import pt.ulisboa.ist.sirs.databaseserver.grpc.crypto.AuthenticationClientCryptographicManager;
+import pt.ulisboa.ist.sirs.cryptology.CipherSuite;
 import pt.ulisboa.ist.sirs.cryptology.EKEClient;
+import pt.ulisboa.ist.sirs.cryptology.IdentityCache;
 import pt.ulisboa.ist.sirs.databaseserver.grpc.crypto.NamingServerCryptographicStub;
 import pt.ulisboa.ist.sirs.dto.EKEParams;
-import pt.ulisboa.ist.sirs.utils.Utils;
 import pt.ulisboa.ist.sirs.utils.exceptions.TamperedMessageException;
 
 import java.io.File;
@@ -108,14 +109,15 @@ public class DatabaseService {
       );
       crypto.validateServer(initiateResponse.getServerCert().toByteArray());
 
-      EKEClient ekeClient = new EKEClient(crypto);
+      EKEClient ekeClient = new EKEClient(crypto, CipherSuite.PREFERRED);
       EKEParams exchangeParams = ekeClient.encryptedKeyExchange();
 
       NamingServer.EncryptedKeyExchangeResponse serverResponse = stub.encryptedKeyExchange(
         NamingServer.EncryptedKeyExchangeRequest.newBuilder()
           .setClientParams(ByteString.copyFrom(exchangeParams.params()))
-          .setClientCert(ByteString.copyFrom(Utils.readBytesFromFile(Base.CryptographicCore.getCertPath())))
+          .setClientCert(ByteString.copyFrom(IdentityCache.shared().ownCertificate()))
           .setClientOps(ByteString.copyFrom(exchangeParams.publicKeySpecs()))
+          .setCipherSuiteValue(ekeClient.getCipherSuite().getId())
       .build());
 
       long serverChallenge = ekeClient.finalize(
@@ -3,80 +3,24 @@ package pt.ulisboa.ist.sirs.databaseserver.grpc.crypto;
 import com.google.protobuf.Message;
 import io.grpc.MethodDescriptor;
 import io.grpc.ServerServiceDefinition;
-import io.grpc.Status;
-import io.grpc.StatusRuntimeException;
 import pt.ulisboa.ist.sirs.contract.databaseserver.DatabaseServer.*;
 import pt.ulisboa.ist.sirs.contract.databaseserver.DatabaseServiceGrpc;
 import pt.ulisboa.ist.sirs.databaseserver.DatabaseServerImpl;
-import pt.ulisboa.ist.sirs.utils.exceptions.TamperedMessageException;
-
-import java.io.ByteArrayInputStream;
-import java.io.IOException;
-import java.io.InputStream;
-import java.util.Arrays;
+import pt.ulisboa.ist.sirs.utils.ProtectedMarshaller;
 
+import static io.grpc.stub.ServerCalls.asyncServerStreamingCall;
 import static io.grpc.stub.ServerCalls.asyncUnaryCall;
 
 public abstract class AbstractCryptographicDatabaseServiceImpl {
   public <T extends Message> MethodDescriptor.Marshaller<T> marshallerForDatabase(
-    T message, String fullMethodName, DatabaseServerCryptographicManager crypto
+    T message, DatabaseServerCryptographicManager crypto
   ) {
-    return new MethodDescriptor.Marshaller<>() {
-      private final String methodName = fullMethodName;
-
-      @Override
-      public InputStream stream(T value) {
-        try {
-          return new ByteArrayInputStream(crypto.encryptByteArray(value.toByteArray(), methodName));
-        } catch (Exception e) {
-          throw new StatusRuntimeException(Status.INTERNAL.withDescription(Arrays.toString(e.getStackTrace())));
-        }
-      }
-
-      @Override
-      @SuppressWarnings("unchecked")
-      public T parse(InputStream inputStream) {
-        try {
-          byte[] request = inputStream.readAllBytes();
-          if (crypto.checkByteArray(request, methodName))
-            throw new TamperedMessageException();
-          return (T) message.newBuilderForType().mergeFrom(crypto.decryptByteArray(request, methodName)).build();
-        } catch (IOException e) {
-          throw Status.INTERNAL.withDescription("Invalid protobuf byte sequence").withCause(e).asRuntimeException();
-        } catch (Exception e) {
-          throw new RuntimeException(e);
-        }
-      }
-    };
+    return new ProtectedMarshaller<>(message, crypto::encryptBuffer, crypto::verifyAndDecryptBuffer);
   }
   public <T extends Message> MethodDescriptor.Marshaller<T> marshallerForDatabaseAuth(
-    T message, String fullMethodName, DatabaseServerCryptographicManager crypto
+    T message, DatabaseServerCryptographicManager crypto
   ) {
-    return new MethodDescriptor.Marshaller<>() {
-      private final String methodName = fullMethodName;
-      @Override
-      public InputStream stream(T value) {
-        try {
-          return new ByteArrayInputStream(crypto.encryptByteArray(value.toByteArray(), methodName));
-        } catch (Exception e) {
-          throw new StatusRuntimeException(Status.INTERNAL.withDescription(Arrays.toString(e.getStackTrace())));
-        }
-      }
-
-      @Override
-      @SuppressWarnings("unchecked")
-      public T parse(InputStream inputStream) {
-        try {
-          return (T) message.newBuilderForType().mergeFrom(
-            crypto.decryptByteArray(inputStream.readAllBytes(), methodName)
-          ).build();
-        } catch (IOException e) {
-          throw Status.INTERNAL.withDescription("Invalid protobuf byte sequence").withCause(e).asRuntimeException();
-        } catch (Exception e) {
-          throw new RuntimeException(e);
-        }
-      }
-    };
+    return new ProtectedMarshaller<>(message, crypto::encryptBufferSigned, crypto::decryptBuffer);
   }
   public final ServerServiceDefinition bindService(DatabaseServerCryptographicManager crypto, DatabaseServerImpl serverImpl) {
     final MethodDescriptor<AuthenticateRequest, AuthenticateResponse> METHOD_AUTHENTICATE =
@@ -85,7 +29,6 @@ public abstract class AbstractCryptographicDatabaseServiceImpl {
           DatabaseServiceGrpc.getAuthenticateMethod().getRequestMarshaller(),
           marshallerForDatabaseAuth(
             AuthenticateResponse.getDefaultInstance(),
-            DatabaseServiceGrpc.getAuthenticateMethod().getFullMethodName(),
             crypto
           )
     ).build();
@@ -94,12 +37,19 @@ public abstract class AbstractCryptographicDatabaseServiceImpl {
         .toBuilder(
           marshallerForDatabaseAuth(
             StillAliveRequest.getDefaultInstance(),
-            DatabaseServiceGrpc.getStillAliveMethod().getFullMethodName(),
             crypto
           ),
           marshallerForDatabaseAuth(
             StillAliveResponse.getDefaultInstance(),
-            DatabaseServiceGrpc.getStillAliveMethod().getFullMethodName(),
+            crypto
+          )
+    ).build();
+    final MethodDescriptor<ResumeRequest, ResumeResponse> METHOD_RESUME =
+      DatabaseServiceGrpc.getResumeMethod()
+        .toBuilder(
+          DatabaseServiceGrpc.getResumeMethod().getRequestMarshaller(),
+          marshallerForDatabaseAuth(
+            ResumeResponse.getDefaultInstance(),
             crypto
           )
     ).build();
@@ -108,12 +58,10 @@ public abstract class AbstractCryptographicDatabaseServiceImpl {
         .toBuilder(
           marshallerForDatabase(
             CreateAccountRequest.getDefaultInstance(),
-            DatabaseServiceGrpc.getCreateAccountMethod().getFullMethodName(),
             crypto
           ),
           marshallerForDatabase(
             Ack.getDefaultInstance(),
-            DatabaseServiceGrpc.getCreateAccountMethod().getFullMethodName(),
             crypto
           )
     ).build();
@@ -122,12 +70,10 @@ public abstract class AbstractCryptographicDatabaseServiceImpl {
         .toBuilder(
           marshallerForDatabase(
             DeleteAccountRequest.getDefaultInstance(),
-            DatabaseServiceGrpc.getDeleteAccountMethod().getFullMethodName(),
             crypto
           ),
           marshallerForDatabase(
             Ack.getDefaultInstance(),
-            DatabaseServiceGrpc.getDeleteAccountMethod().getFullMethodName(),
             crypto
           )
     ).build();
@@ -136,12 +82,10 @@ public abstract class AbstractCryptographicDatabaseServiceImpl {
         .toBuilder(
           marshallerForDatabase(
             BalanceRequest.getDefaultInstance(),
-            DatabaseServiceGrpc.getBalanceMethod().getFullMethodName(),
             crypto
           ),
           marshallerForDatabase(
             BalanceResponse.getDefaultInstance(),
-            DatabaseServiceGrpc.getBalanceMethod().getFullMethodName(),
             crypto
           )
     ).build();
@@ -150,12 +94,22 @@ public abstract class AbstractCryptographicDatabaseServiceImpl {
         .toBuilder(
           marshallerForDatabase(
             GetMovementsRequest.getDefaultInstance(),
-            DatabaseServiceGrpc.getGetMovementsMethod().getFullMethodName(),
             crypto
           ),
           marshallerForDatabase(
             GetMovementsResponse.getDefaultInstance(),
-            DatabaseServiceGrpc.getGetMovementsMethod().getFullMethodName(),
+            crypto
+          )
+    ).build();
+    final MethodDescriptor<GetMovementsRequest, GetMovementsResponse> METHOD_STREAM_MOVEMENTS =
+      DatabaseServiceGrpc.getStreamMovementsMethod()
+        .toBuilder(
+          marshallerForDatabase(
+            GetMovementsRequest.getDefaultInstance(),
+            crypto
+          ),
+          marshallerForDatabase(
+            GetMovementsResponse.getDefaultInstance(),
             crypto
           )
     ).build();
@@ -164,12 +118,10 @@ public abstract class AbstractCryptographicDatabaseServiceImpl {
         .toBuilder(
           marshallerForDatabase(
             OrderPaymentRequest.getDefaultInstance(),
-            DatabaseServiceGrpc.getOrderPaymentMethod().getFullMethodName(),
             crypto
           ),
           marshallerForDatabase(
             Ack.getDefaultInstance(),
-            DatabaseServiceGrpc.getOrderPaymentMethod().getFullMethodName(),
             crypto
           )
     ).build();
@@ -177,10 +129,12 @@ public abstract class AbstractCryptographicDatabaseServiceImpl {
     return ServerServiceDefinition.builder(orig.getServiceDescriptor().getName())
       .addMethod(METHOD_AUTHENTICATE, asyncUnaryCall(serverImpl::authenticate))
       .addMethod(METHOD_STILL_ALIVE, asyncUnaryCall(serverImpl::stillAlive))
+      .addMethod(METHOD_RESUME, asyncUnaryCall(serverImpl::resume))
       .addMethod(METHOD_CREATE_ACCOUNT, asyncUnaryCall(serverImpl::createAccount))
       .addMethod(METHOD_DELETE_ACCOUNT, asyncUnaryCall(serverImpl::deleteAccount))
       .addMethod(METHOD_BALANCE, asyncUnaryCall(serverImpl::balance))
       .addMethod(METHOD_GET_MOVEMENTS, asyncUnaryCall(serverImpl::getMovements))
+      .addMethod(METHOD_STREAM_MOVEMENTS, asyncServerStreamingCall(serverImpl::streamMovements))
       .addMethod(METHOD_ORDER_PAYMENTS, asyncUnaryCall(serverImpl::orderPayment))
       .build();
   }
@@ -1,15 +1,16 @@
 package pt.ulisboa.ist.sirs.databaseserver.grpc.crypto;
 
 import pt.ulisboa.ist.sirs.cryptology.Base;
+import pt.ulisboa.ist.sirs.cryptology.IdentityCache;
 import pt.ulisboa.ist.sirs.utils.Utils;
 
-import java.io.ByteArrayInputStream;
 import java.io.File;
+import java.security.PublicKey;
 import java.security.cert.CertificateException;
-import java.security.cert.CertificateFactory;
-import java.security.cert.X509Certificate;
 
 public class AuthenticationClientCryptographicManager extends CryptographicCore implements Base.EKEClientManager {
+  private volatile PublicKey serverKey;
+
   public AuthenticationClientCryptographicManager() {
     super();
   }
@@ -26,7 +27,15 @@ public class AuthenticationClientCryptographicManager extends CryptographicCore
   }
 
   public boolean checkByteArray(byte[] object) throws Exception {
-    return !checkByteArray(object, buildSessionKeyPath(), buildPublicKeyPath(), buildSessionIVPath());
+    return !checkByteArray(
+      object, Base.readSecretKey(buildSessionKeyPath()), getServerKey(), Base.readIv(buildSessionIVPath())
+    );
+  }
+
+  public byte[] verifyAndDecryptByteArray(byte[] object) throws Exception {
+    return verifyAndDecryptByteArray(
+      object, Base.readSecretKey(buildSessionKeyPath()), getServerKey(), Base.readIv(buildSessionIVPath())
+    );
   }
 
   public byte[] decryptByteArray(byte[] object) throws Exception {
@@ -50,12 +59,16 @@ public class AuthenticationClientCryptographicManager extends CryptographicCore
   }
 
   public void validateServer(byte[] clientCert) throws CertificateException {
-    CertificateFactory certGen = CertificateFactory.getInstance("X.509");
-    X509Certificate cert = (X509Certificate) certGen.generateCertificate(
-      new ByteArrayInputStream(clientCert)
-    );
-    cert.checkValidity();
-    Utils.writeBytesToFile(cert.getPublicKey().getEncoded(), buildPublicKeyPath());
+    PublicKey publicKey = IdentityCache.shared().peerKey(clientCert);
+    Utils.writeBytesToFile(publicKey.getEncoded(), buildPublicKeyPath());
+    this.serverKey = publicKey;
+  }
+
+  private PublicKey getServerKey() throws Exception {
+    PublicKey publicKey = serverKey;
+    if (publicKey == null)
+      serverKey = publicKey = Base.readPublicKey(buildPublicKeyPath());
+    return publicKey;
   }
 
   public void initializeSession(byte[] secretKey, byte[] iv) {
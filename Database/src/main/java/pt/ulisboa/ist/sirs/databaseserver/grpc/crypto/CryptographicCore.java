@@ -1,10 +1,16 @@
 package pt.ulisboa.ist.sirs.databaseserver.grpc.crypto;
 
 import pt.ulisboa.ist.sirs.cryptology.Base;
+import pt.ulisboa.ist.sirs.cryptology.IdentityCache;
 import pt.ulisboa.ist.sirs.cryptology.Operations;
 import pt.ulisboa.ist.sirs.databaseserver.dto.TicketDto;
 import pt.ulisboa.ist.sirs.dto.Ticket;
 
+import javax.crypto.SecretKey;
+import java.nio.ByteBuffer;
+import java.security.PrivateKey;
+import java.security.PublicKey;
+
 public class CryptographicCore implements Base.CryptographicCore {
   protected static final String SESSION_DIR = "resources/crypto/session/";
   protected static final String SELF_DIR = "resources/crypto/self/";
@@ -37,4 +43,78 @@ public class CryptographicCore implements Base.CryptographicCore {
       message, Base.readSecretKey(secretKeyPath), Base.readPrivateKey(privateKeyPath), Base.readIv(ivPath)
     );
   }
+
+  protected static PublicKey parsePublicKey(byte[] publicKey) throws Exception {
+    return IdentityCache.shared().publicKey(publicKey);
+  }
+
+  protected static boolean checkByteArray(
+    byte[] message, SecretKey secretKey, PublicKey publicKey, byte[] iv
+  ) throws Exception {
+    return Decrypter.check(message, secretKey, publicKey, iv);
+  }
+
+  protected static byte[] verifyAndDecryptByteArray(
+    byte[] message, String secretKeyPath, String publicKeyPath, String ivPath
+  ) throws Exception {
+    return Decrypter.verifyAndDecryptByteArray(
+      message, Base.readSecretKey(secretKeyPath), Base.readPublicKey(publicKeyPath), Base.readIv(ivPath)
+    );
+  }
+
+  protected static byte[] verifyAndDecryptByteArray(
+    byte[] message, SecretKey secretKey, PublicKey publicKey, byte[] iv
+  ) throws Exception {
+    return Decrypter.verifyAndDecryptByteArray(message, secretKey, publicKey, iv);
+  }
+
+  protected static byte[] decryptByteArrayWithMac(
+    byte[] message, SecretKey secretKey, SecretKey macKey, byte[] iv
+  ) throws Exception {
+    return Decrypter.decryptByteArrayWithMac(message, secretKey, macKey, iv);
+  }
+
+  protected static byte[] encryptByteArrayWithMac(
+    byte[] message, SecretKey secretKey, SecretKey macKey, byte[] iv
+  ) throws Exception {
+    return Encrypter.encryptByteArrayWithMac(message, secretKey, macKey, iv);
+  }
+
+  protected static byte[] decryptByteArray(byte[] message, SecretKey secretKey, byte[] iv) throws Exception {
+    return Decrypter.decryptByteArray(message, secretKey, iv);
+  }
+
+  protected static byte[] encryptByteArray(
+    byte[] message, SecretKey secretKey, PrivateKey privateKey, byte[] iv
+  ) throws Exception {
+    return Encrypter.encryptByteArray(message, secretKey, privateKey, iv);
+  }
+
+  protected static ByteBuffer encryptBuffer(
+    ByteBuffer message, SecretKey secretKey, PrivateKey privateKey, byte[] iv
+  ) throws Exception {
+    return Encrypter.encryptBuffer(message, secretKey, privateKey, iv);
+  }
+
+  protected static ByteBuffer encryptBufferWithMac(
+    ByteBuffer message, SecretKey secretKey, SecretKey macKey, byte[] iv
+  ) throws Exception {
+    return Encrypter.encryptBufferWithMac(message, secretKey, macKey, iv);
+  }
+
+  protected static ByteBuffer verifyAndDecryptBuffer(
+    ByteBuffer message, SecretKey secretKey, PublicKey publicKey, byte[] iv
+  ) throws Exception {
+    return Decrypter.verifyAndDecryptBuffer(message, secretKey, publicKey, iv);
+  }
+
+  protected static ByteBuffer decryptBufferWithMac(
+    ByteBuffer message, SecretKey secretKey, SecretKey macKey, byte[] iv
+  ) throws Exception {
+    return Decrypter.decryptBufferWithMac(message, secretKey, macKey, iv);
+  }
+
+  protected static ByteBuffer decryptBuffer(ByteBuffer message, SecretKey secretKey, byte[] iv) throws Exception {
+    return Decrypter.decryptBuffer(message, secretKey, iv);
+  }
 }
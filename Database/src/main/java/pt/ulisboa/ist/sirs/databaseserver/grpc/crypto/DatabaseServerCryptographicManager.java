@@ -1,32 +1,53 @@
 package pt.ulisboa.ist.sirs.databaseserver.grpc.crypto;
 
-import pt.ulisboa.ist.sirs.contract.databaseserver.DatabaseServiceGrpc;
+import pt.ulisboa.ist.sirs.contract.databaseserver.DatabaseServer.ProtectionMode;
+import pt.ulisboa.ist.sirs.cryptology.Base;
+import pt.ulisboa.ist.sirs.cryptology.Operations;
 import pt.ulisboa.ist.sirs.databaseserver.dto.TicketDto;
-import pt.ulisboa.ist.sirs.utils.Utils;
+import pt.ulisboa.ist.sirs.databaseserver.grpc.crypto.SessionKeyStore.SessionKeys;
+import pt.ulisboa.ist.sirs.utils.ChallengeRegistry;
+import pt.ulisboa.ist.sirs.utils.exceptions.TamperedMessageException;
 
-import java.io.File;
-import java.util.HashMap;
-import java.util.Map;
-import java.util.Random;
+import javax.crypto.spec.SecretKeySpec;
+import java.nio.ByteBuffer;
+import java.security.MessageDigest;
+import java.security.PrivateKey;
+import java.security.PublicKey;
+import java.util.List;
 
 public class DatabaseServerCryptographicManager extends CryptographicCore {
   private final String publicKeyPath;
   private final String privateKeyPath;
+  private final PrivateKey privateKey;
   private final DatabaseServerCryptographicInterceptor crypto;
-  private final Map<String, Long> nonces = new HashMap<>();
+  private final SessionKeyStore sessions;
+  private final ResumptionTickets resumptionTickets = new ResumptionTickets();
+  private final ChallengeRegistry challenges = new ChallengeRegistry();
+  private final SessionAuthorizations authorizations;
 
   public DatabaseServerCryptographicManager(
       DatabaseServerCryptographicInterceptor crypto,
       String publicKeyPath,
-      String privateKeyPath) {
+      String privateKeyPath) throws Exception {
+    this(crypto, publicKeyPath, privateKeyPath, new SessionKeyStore());
+  }
+
+  public DatabaseServerCryptographicManager(
+      DatabaseServerCryptographicInterceptor crypto,
+      String publicKeyPath,
+      String privateKeyPath,
+      SessionKeyStore sessions) throws Exception {
     super();
     this.publicKeyPath = publicKeyPath;
     this.privateKeyPath = privateKeyPath;
+    this.privateKey = Base.readPrivateKey(privateKeyPath);
     this.crypto = crypto;
+    this.sessions = sessions;
+    this.authorizations = new SessionAuthorizations(crypto::findClientHash);
   }
 
-  public String getClientHash(String methodName) {
-    return crypto.getClientHash(methodName);
+  public String getClientHash() {
+    return crypto.getClientHash();
   }
 
   @SuppressWarnings("all")
@@ -46,61 +67,136 @@ public class DatabaseServerCryptographicManager extends CryptographicCore {
     return AUTH_DIR + "iv";
   }
 
-  private String buildSessionKeyPath(String client) {
-    return SESSION_DIR + client + "/sessionKey";
+  private SessionKeys getSession(String client) {
+    return sessions.get(client).orElseThrow(() -> new RuntimeException("No session established for client"));
   }
 
-  private String buildSessionIVPath(String client) {
-    return SESSION_DIR + client + "/iv";
+  public void createSession(byte[] sessionKey, byte[] iv) {
+    String client = getClientHash();
+    authorizations.invalidate(client);
+    sessions.put(client, new SessionKeys(new SecretKeySpec(sessionKey, Base.SYMMETRIC_ALG), iv.clone()));
   }
 
-  private String buildSessionPublicKeyPath(String client) {
-    return SESSION_DIR + client + "/publicKey";
+  public long initializeNonce() {
+    return challenges.issue(getClientHash());
   }
 
-  public void createSession(byte[] sessionKey, byte[] iv) {
-    String client = crypto.getFromQueue(DatabaseServiceGrpc.getAuthenticateMethod().getFullMethodName());
-    File clientDirectory = new File(SESSION_DIR + client + "/");
-    if (!clientDirectory.exists())
-      if (!clientDirectory.mkdirs())
-        throw new RuntimeException("Could not store client key");
-    Utils.writeBytesToFile(sessionKey, buildSessionKeyPath(client));
-    Utils.writeBytesToFile(iv, buildSessionIVPath(client));
+  public boolean checkNonce(Long nonce) {
+    return nonce != null && challenges.answer(getClientHash(), nonce);
   }
 
-  public long initializeNonce() {
-    long nonce = (new Random()).nextLong();
-    nonces.put(crypto.getFromQueue(DatabaseServiceGrpc.getAuthenticateMethod().getFullMethodName()), nonce);
-    return nonce;
+  public ChallengeRegistry getChallenges() {
+    return challenges;
   }
 
-  public boolean checkNonce(Long nonce) {
-    boolean result = false;
-    if (nonces.containsKey(crypto.getFromQueue(DatabaseServiceGrpc.getStillAliveMethod().getFullMethodName()))) {
-      result = nonces.get(crypto.getFromQueue(DatabaseServiceGrpc.getStillAliveMethod().getFullMethodName())).equals(nonce);
-      nonces.remove(crypto.getFromQueue(DatabaseServiceGrpc.getStillAliveMethod().getFullMethodName()));
-    }
-    return result;
+  public void validateSession(byte[] publicKey) throws Exception {
+    String client = getClientHash();
+    final PublicKey clientKey = parsePublicKey(publicKey);
+    if (sessions.update(client, s -> s.withPublicKey(clientKey)).isEmpty())
+      throw new RuntimeException("No session established for client");
+  }
+
+  public ProtectionMode negotiateProtectionMode(List<ProtectionMode> offered) {
+    if (!offered.contains(ProtectionMode.HmacSha256))
+      return ProtectionMode.Signature;
+    String client = getClientHash();
+    if (sessions.update(client, s -> {
+      try {
+        return s.withMacKeys();
+      } catch (Exception e) {
+        throw new RuntimeException(e.getMessage());
+      }
+    }).isEmpty())
+      throw new RuntimeException("No session established for client");
+    return ProtectionMode.HmacSha256;
+  }
+
+  public byte[] issueResumptionTicket() throws Exception {
+    return resumptionTickets.seal(getSession(getClientHash()));
+  }
+
+  // Client proves it holds the ticket's session key, the resumed session keeps the mode it was negotiated with
+  public ProtectionMode resumeSession(byte[] ticket, String timestamp, byte[] proof) throws Exception {
+    SessionKeys session = resumptionTickets.unseal(ticket);
+    byte[] expected = Operations.hmac(
+      Operations.deriveMacKey(session.secretKey(), Base.SESSION_RESUMPTION_LABEL), ticket, timestamp.getBytes()
+    );
+    if (!MessageDigest.isEqual(expected, proof))
+      throw new TamperedMessageException();
+    String client = getClientHash();
+    authorizations.invalidate(client);
+    sessions.put(client, session);
+    return session.isMacProtected() ? ProtectionMode.HmacSha256 : ProtectionMode.Signature;
+  }
+
+  public void invalidateSession(String client) {
+    sessions.invalidate(client);
+    authorizations.invalidate(client);
+  }
+
+  // Usernames each session already proved the password of, dropped whenever the session is replaced
+  public SessionAuthorizations getAuthorizations() {
+    return authorizations;
+  }
+
+  public byte[] encryptByteArray(byte[] object) throws Exception {
+    SessionKeys session = getSession(getClientHash());
+    if (session.isMacProtected())
+      return encryptByteArrayWithMac(object, session.secretKey(), session.serverMacKey(), session.iv());
+    return encryptByteArray(object, session.secretKey(), privateKey, session.iv());
+  }
+
+  public byte[] encryptByteArraySigned(byte[] object) throws Exception {
+    SessionKeys session = getSession(getClientHash());
+    return encryptByteArray(object, session.secretKey(), privateKey, session.iv());
+  }
+
+  public boolean checkByteArray(byte[] object) throws Exception {
+    SessionKeys session = getSession(getClientHash());
+    if (session.publicKey() == null)
+      return true;
+    return !checkByteArray(object, session.secretKey(), session.publicKey(), session.iv());
+  }
+
+  public byte[] verifyAndDecryptByteArray(byte[] object) throws Exception {
+    SessionKeys session = getSession(getClientHash());
+    if (session.isMacProtected())
+      return decryptByteArrayWithMac(object, session.secretKey(), session.clientMacKey(), session.iv());
+    if (session.publicKey() == null)
+      throw new TamperedMessageException();
+    return verifyAndDecryptByteArray(object, session.secretKey(), session.publicKey(), session.iv());
+  }
+
+  public byte[] decryptByteArray(byte[] object) throws Exception {
+    SessionKeys session = getSession(getClientHash());
+    return decryptByteArray(object, session.secretKey(), session.iv());
   }
 
-  public void validateSession(byte[] publicKey) {
-    String client = crypto.getFromQueue(DatabaseServiceGrpc.getStillAliveMethod().getFullMethodName());
-    Utils.writeBytesToFile(publicKey, buildSessionPublicKeyPath(client));
+  // Marshaller path, same protection as the byte array methods above without the intermediate copies
+  public ByteBuffer encryptBuffer(ByteBuffer object) throws Exception {
+    SessionKeys session = getSession(getClientHash());
+    if (session.isMacProtected())
+      return encryptBufferWithMac(object, session.secretKey(), session.serverMacKey(), session.iv());
+    return encryptBuffer(object, session.secretKey(), privateKey, session.iv());
   }
 
-  public byte[] encryptByteArray(byte[] object, String methodName) throws Exception {
-    String client = getClientHash(methodName);
-    return encryptByteArray(object, buildSessionKeyPath(client), getPrivateKeyPath(), buildSessionIVPath(client));
+  public ByteBuffer encryptBufferSigned(ByteBuffer object) throws Exception {
+    SessionKeys session = getSession(getClientHash());
+    return encryptBuffer(object, session.secretKey(), privateKey, session.iv());
   }
 
-  public boolean checkByteArray(byte[] object, String methodName) throws Exception {
-    String client = getClientHash(methodName);
-    return !checkByteArray(object, buildSessionKeyPath(client), buildSessionPublicKeyPath(client), buildSessionIVPath(client));
+  public ByteBuffer verifyAndDecryptBuffer(ByteBuffer object) throws Exception {
+    SessionKeys session = getSession(getClientHash());
+    if (session.isMacProtected())
+      return decryptBufferWithMac(object, session.secretKey(), session.clientMacKey(), session.iv());
+    if (session.publicKey() == null)
+      throw new TamperedMessageException();
+    return verifyAndDecryptBuffer(object, session.secretKey(), session.publicKey(), session.iv());
   }
 
-  public byte[] decryptByteArray(byte[] object, String methodName) throws Exception {
-    String client = getClientHash(methodName);
-    return decryptByteArray(object, buildSessionKeyPath(client), buildSessionIVPath(client));
+  public ByteBuffer decryptBuffer(ByteBuffer object) throws Exception {
+    SessionKeys session = getSession(getClientHash());
+    return decryptBuffer(object, session.secretKey(), session.iv());
   }
 
   public TicketDto unbundleTicket(byte[] ticket) throws Exception {
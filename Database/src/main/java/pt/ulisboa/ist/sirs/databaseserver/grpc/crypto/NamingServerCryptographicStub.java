@@ -8,7 +8,6 @@ import io.grpc.Status;
 import io.grpc.stub.AbstractStub;
 import pt.ulisboa.ist.sirs.contract.namingserver.NamingServer.*;
 import pt.ulisboa.ist.sirs.contract.namingserver.NamingServerServiceGrpc;
-import pt.ulisboa.ist.sirs.utils.exceptions.TamperedMessageException;
 
 import java.io.ByteArrayInputStream;
 import java.io.IOException;
@@ -32,10 +31,9 @@ public class NamingServerCryptographicStub extends AbstractStub<NamingServerCryp
       @SuppressWarnings("unchecked")
       public T parse(InputStream inputStream) {
         try {
-          byte[] response = inputStream.readAllBytes();
-          if (crypto.checkByteArray(response))
-            throw new TamperedMessageException();
-          return (T) message.newBuilderForType().mergeFrom(crypto.decryptByteArray(response)).build();
+          return (T) message.newBuilderForType().mergeFrom(
+            crypto.verifyAndDecryptByteArray(inputStream.readAllBytes())
+          ).build();
         } catch (IOException e) {
           throw Status.INTERNAL.withDescription("Invalid protobuf byte sequence").withCause(e).asRuntimeException();
         } catch (Exception e) {
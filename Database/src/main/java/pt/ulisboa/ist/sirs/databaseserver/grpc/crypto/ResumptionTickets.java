@@ -0,0 +1,64 @@
+package pt.ulisboa.ist.sirs.databaseserver.grpc.crypto;
+
+import pt.ulisboa.ist.sirs.cryptology.Base;
+import pt.ulisboa.ist.sirs.cryptology.IdentityCache;
+import pt.ulisboa.ist.sirs.cryptology.Operations;
+import pt.ulisboa.ist.sirs.cryptology.SealedRecord;
+import pt.ulisboa.ist.sirs.databaseserver.grpc.crypto.SessionKeyStore.SessionKeys;
+import pt.ulisboa.ist.sirs.utils.exceptions.InvalidResumptionTicketException;
+
+import javax.crypto.SecretKey;
+import javax.crypto.spec.SecretKeySpec;
+import java.io.EOFException;
+import java.security.PublicKey;
+import java.time.Clock;
+import java.time.Duration;
+
+public final class ResumptionTickets {
+  public static final Duration DEFAULT_LIFETIME = Duration.ofHours(2);
+
+  // Tickets are sealed under a key that never leaves this process, a restart invalidates every ticket
+  private final SecretKey ticketKey = new SecretKeySpec(Operations.generateSessionKey(), Base.SYMMETRIC_ALG);
+  private final Clock clock;
+  private final long lifetime;
+
+  public ResumptionTickets() {
+    this(DEFAULT_LIFETIME, Clock.systemUTC());
+  }
+
+  public ResumptionTickets(Duration lifetime, Clock clock) {
+    if (lifetime.isNegative() || lifetime.isZero())
+      throw new IllegalArgumentException("Resumption tickets need a positive lifetime");
+    this.lifetime = lifetime.toMillis();
+    this.clock = clock;
+  }
+
+  // Only sessions that finished the handshake, and so know the client's key, can be resumed
+  // Reissued tickets keep the deadline of the first one, past it the client must go back to the authentication server
+  public byte[] seal(SessionKeys session) throws Exception {
+    if (session.publicKey() == null)
+      throw new InvalidResumptionTicketException();
+    long resumableUntil = session.resumableUntil() > 0 ? session.resumableUntil() : clock.millis() + lifetime;
+    return SealedRecord.seal(ticketKey, resumableUntil, out -> {
+      out.writeBoolean(session.isMacProtected());
+      SealedRecord.writeField(out, session.secretKey().getEncoded());
+      SealedRecord.writeField(out, session.iv());
+      SealedRecord.writeField(out, session.publicKey().getEncoded());
+    });
+  }
+
+  public SessionKeys unseal(byte[] ticket) throws Exception {
+    try {
+      return SealedRecord.unseal(ticketKey, ticket, clock.millis(), (resumableUntil, in) -> {
+        boolean mac = in.readBoolean();
+        SecretKey secretKey = new SecretKeySpec(SealedRecord.readField(in), Base.SYMMETRIC_ALG);
+        byte[] iv = SealedRecord.readField(in);
+        PublicKey publicKey = IdentityCache.shared().publicKey(SealedRecord.readField(in));
+        SessionKeys session = new SessionKeys(secretKey, iv).withPublicKey(publicKey).withResumableUntil(resumableUntil);
+        return mac ? session.withMacKeys() : session;
+      }).orElseThrow(InvalidResumptionTicketException::new);
+    } catch (EOFException e) {
+      throw new InvalidResumptionTicketException();
+    }
+  }
+}
@@ -0,0 +1,108 @@
+package pt.ulisboa.ist.sirs.databaseserver.grpc.crypto;
+
+import pt.ulisboa.ist.sirs.cryptology.Operations;
+
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.time.Duration;
+import java.util.Comparator;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.Supplier;
+
+public final class SessionAuthorizations {
+  public static final int DEFAULT_CAPACITY = SessionKeyStore.DEFAULT_CAPACITY;
+  public static final Duration DEFAULT_TTL = SessionKeyStore.DEFAULT_TTL;
+
+  // Only a digest of the password hash the holder proved is kept, never the hash itself
+  private record Grant(byte[] digest, long expiresAt) {}
+
+  private static final class Session {
+    private final Map<String, Grant> grants = new ConcurrentHashMap<>();
+    private volatile long lastUsed = System.nanoTime();
+  }
+
+  private final Map<String, Session> sessions = new ConcurrentHashMap<>();
+  private final Supplier<Optional<String>> currentSession;
+  private final int capacity;
+  private final long ttl;
+
+  public SessionAuthorizations(Supplier<Optional<String>> currentSession) {
+    this(currentSession, DEFAULT_CAPACITY, DEFAULT_TTL);
+  }
+
+  public SessionAuthorizations(Supplier<Optional<String>> currentSession, int capacity, Duration ttl) {
+    if (capacity <= 0 || ttl.isNegative() || ttl.isZero())
+      throw new IllegalArgumentException("Session authorizations need a positive capacity and time to live");
+    this.currentSession = currentSession;
+    this.capacity = capacity;
+    this.ttl = ttl.toNanos();
+  }
+
+  // Calls made outside a client session are never cached
+  public boolean isAuthorized(String username, byte[] password) {
+    Optional<String> session = currentSession.get();
+    if (session.isEmpty())
+      return false;
+    Session entry = sessions.get(session.get());
+    Grant grant = entry == null ? null : entry.grants.get(username);
+    if (grant == null)
+      return false;
+    long now = System.nanoTime();
+    if (now - grant.expiresAt() > 0) {
+      entry.grants.remove(username, grant);
+      return false;
+    }
+    entry.lastUsed = now;
+    return MessageDigest.isEqual(grant.digest(), digest(password));
+  }
+
+  public void authorize(String username, byte[] password) {
+    Optional<String> session = currentSession.get();
+    if (session.isEmpty())
+      return;
+    Session entry = sessions.computeIfAbsent(session.get(), k -> new Session());
+    long now = System.nanoTime();
+    entry.grants.put(username, new Grant(digest(password), now + ttl));
+    entry.lastUsed = now;
+    if (sessions.size() > capacity)
+      evict();
+  }
+
+  // Deleted accounts and changed passwords must prove themselves again, in every session
+  public void revoke(String username) {
+    sessions.values().forEach(entry -> entry.grants.remove(username));
+  }
+
+  public void invalidate(String session) {
+    sessions.remove(session);
+  }
+
+  public int size() {
+    return sessions.size();
+  }
+
+  private void evict() {
+    long now = System.nanoTime();
+    sessions.values().forEach(entry -> entry.grants.values().removeIf(grant -> now - grant.expiresAt() > 0));
+    sessions.values().removeIf(entry -> entry.grants.isEmpty());
+    int excess = sessions.size() - capacity;
+    if (excess <= 0)
+      return;
+    // Still over capacity, drop the least recently used sessions
+    sessions.entrySet().stream()
+      .sorted(Comparator.comparingLong(e -> e.getValue().lastUsed - now))
+      .limit(excess)
+      .toList()
+      .forEach(e -> sessions.remove(e.getKey(), e.getValue()));
+  }
+
+  private static byte[] digest(byte[] password) {
+    try {
+      return Operations.hash(password);
+    } catch (NoSuchAlgorithmException e) {
+      throw new IllegalStateException(e);
+    }
+  }
+}
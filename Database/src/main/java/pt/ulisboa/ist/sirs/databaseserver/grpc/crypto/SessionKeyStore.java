@@ -0,0 +1,131 @@
+package pt.ulisboa.ist.sirs.databaseserver.grpc.crypto;
+
+import pt.ulisboa.ist.sirs.cryptology.Base;
+import pt.ulisboa.ist.sirs.cryptology.Operations;
+
+import javax.crypto.SecretKey;
+import java.security.PublicKey;
+import java.time.Duration;
+import java.util.Comparator;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.UnaryOperator;
+
+public final class SessionKeyStore {
+  public static final int DEFAULT_CAPACITY = 10_000;
+  public static final Duration DEFAULT_TTL = Duration.ofMinutes(30);
+
+  // Each direction has its own MAC key, so a message can never be reflected back to its sender
+  // A resumed session keeps the absolute deadline of the ticket it came from, fresh sessions have none yet
+  public record SessionKeys(
+    SecretKey secretKey, byte[] iv, PublicKey publicKey, SecretKey clientMacKey, SecretKey serverMacKey,
+    long resumableUntil
+  ) {
+    public SessionKeys(SecretKey secretKey, byte[] iv) {
+      this(secretKey, iv, null, null, null, 0);
+    }
+
+    public SessionKeys withPublicKey(PublicKey publicKey) {
+      return new SessionKeys(secretKey, iv, publicKey, clientMacKey, serverMacKey, resumableUntil);
+    }
+
+    public SessionKeys withMacKeys() throws Exception {
+      return new SessionKeys(
+        secretKey, iv, publicKey,
+        Operations.deriveMacKey(secretKey, Base.SESSION_MAC_CLIENT_LABEL),
+        Operations.deriveMacKey(secretKey, Base.SESSION_MAC_SERVER_LABEL),
+        resumableUntil
+      );
+    }
+
+    public SessionKeys withResumableUntil(long resumableUntil) {
+      return new SessionKeys(secretKey, iv, publicKey, clientMacKey, serverMacKey, resumableUntil);
+    }
+
+    public boolean isMacProtected() {
+      return clientMacKey != null;
+    }
+  }
+
+  private static final class Entry {
+    private final SessionKeys keys;
+    private volatile long expiresAt;
+
+    private Entry(SessionKeys keys, long expiresAt) {
+      this.keys = keys;
+      this.expiresAt = expiresAt;
+    }
+  }
+
+  private final Map<String, Entry> sessions = new ConcurrentHashMap<>();
+  private final int capacity;
+  private final long ttl;
+
+  public SessionKeyStore() {
+    this(DEFAULT_CAPACITY, DEFAULT_TTL);
+  }
+
+  public SessionKeyStore(int capacity, Duration ttl) {
+    if (capacity <= 0 || ttl.isNegative() || ttl.isZero())
+      throw new IllegalArgumentException("Session store needs a positive capacity and time to live");
+    this.capacity = capacity;
+    this.ttl = ttl.toNanos();
+  }
+
+  private long deadline() {
+    return System.nanoTime() + ttl;
+  }
+
+  private static boolean isExpired(Entry entry, long now) {
+    return now - entry.expiresAt > 0;
+  }
+
+  public void put(String client, SessionKeys keys) {
+    sessions.put(client, new Entry(keys, deadline()));
+    if (sessions.size() > capacity)
+      evict();
+  }
+
+  public Optional<SessionKeys> get(String client) {
+    Entry entry = sessions.get(client);
+    if (entry == null)
+      return Optional.empty();
+    if (isExpired(entry, System.nanoTime())) {
+      sessions.remove(client, entry);
+      return Optional.empty();
+    }
+    // Sessions in use are kept alive
+    entry.expiresAt = deadline();
+    return Optional.of(entry.keys);
+  }
+
+  public Optional<SessionKeys> update(String client, UnaryOperator<SessionKeys> update) {
+    Entry entry = sessions.computeIfPresent(client, (k, v) -> isExpired(v, System.nanoTime()) ?
+      null : new Entry(update.apply(v.keys), deadline())
+    );
+    return entry == null ? Optional.empty() : Optional.of(entry.keys);
+  }
+
+  public void invalidate(String client) {
+    sessions.remove(client);
+  }
+
+  public int size() {
+    return sessions.size();
+  }
+
+  private void evict() {
+    long now = System.nanoTime();
+    sessions.entrySet().removeIf(e -> isExpired(e.getValue(), now));
+    int excess = sessions.size() - capacity;
+    if (excess <= 0)
+      return;
+    // Still over capacity, drop the least recently used sessions
+    sessions.entrySet().stream()
+      .sorted(Comparator.comparingLong(e -> e.getValue().expiresAt - now))
+      .limit(excess)
+      .toList()
+      .forEach(e -> sessions.remove(e.getKey(), e.getValue()));
+  }
+}
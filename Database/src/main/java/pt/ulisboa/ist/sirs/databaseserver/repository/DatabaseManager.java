@@ -4,16 +4,21 @@ import org.hibernate.Session;
 import org.hibernate.SessionFactory;
 
 import pt.ulisboa.ist.sirs.databaseserver.dto.MovementDto;
+import pt.ulisboa.ist.sirs.databaseserver.dto.MovementPageDto;
 import pt.ulisboa.ist.sirs.databaseserver.grpc.DatabaseService;
+import pt.ulisboa.ist.sirs.databaseserver.grpc.crypto.SessionAuthorizations;
 import pt.ulisboa.ist.sirs.databaseserver.repository.core.DatabaseTransaction;
 import pt.ulisboa.ist.sirs.databaseserver.repository.core.HibernateUtil;
 import pt.ulisboa.ist.sirs.databaseserver.repository.service.DatabaseState;
+import pt.ulisboa.ist.sirs.databaseserver.repository.exceptions.DatabaseBusyException;
 import pt.ulisboa.ist.sirs.databaseserver.repository.exceptions.WrongPasswordException;
 
 import java.math.BigDecimal;
 import java.time.LocalDateTime;
 import java.time.OffsetDateTime;
 import java.util.List;
+import java.util.Optional;
+import java.util.concurrent.Semaphore;
 
 public final class DatabaseManager {
   private abstract static class SimpleDatabaseTransaction<ObjectiveType> extends DatabaseTransaction {
@@ -27,20 +32,39 @@ public final class DatabaseManager {
     public abstract void doInTransaction();
 
     final ObjectiveType yield() {
-      execute();
-      return yield;
+      try {
+        CONNECTION_PERMITS.acquire();
+      } catch (InterruptedException e) {
+        Thread.currentThread().interrupt();
+        throw new DatabaseBusyException();
+      }
+      try {
+        execute();
+        return yield;
+      } finally {
+        CONNECTION_PERMITS.release();
+      }
     }
   }
 
+  // Callers queue here rather than inside the connection pool, however many handler threads the server runs
+  private static final Semaphore CONNECTION_PERMITS = new Semaphore(HibernateUtil.getPoolSize(), true);
+
   private final DatabaseService databaseService;
   private final DatabaseOperations databaseOperator;
+  private final SessionAuthorizations authorizations;
   private final Session session;
 
   public DatabaseManager(DatabaseService service) {
+    this(service, new SessionAuthorizations(Optional::empty));
+  }
+
+  public DatabaseManager(DatabaseService service, SessionAuthorizations authorizations) {
     final SessionFactory sessionFactory = HibernateUtil.getSessionFactory();
     this.session = sessionFactory.openSession();
     this.databaseService = service;
     this.databaseOperator = new DatabaseState.DatabaseManagerBuilder(sessionFactory).build();
+    this.authorizations = authorizations;
   }
 
   public DatabaseService getService() {
@@ -53,6 +77,15 @@ public final class DatabaseManager {
     HibernateUtil.shutdown();
   }
 
+  // A session that already proved a username's password skips the holder and account lookups
+  private void checkPassword(String username, byte[] password) {
+    if (authorizations.isAuthorized(username, password))
+      return;
+    if (databaseOperator.checkPassword(username, password))
+      throw new WrongPasswordException();
+    authorizations.authorize(username, password);
+  }
+
   public void createAccount(List<String> usernames, byte[] password, BigDecimal initialDeposit,
       OffsetDateTime timestamp) {
     new SimpleDatabaseTransaction<Void>() {
@@ -60,6 +93,8 @@ public final class DatabaseManager {
       public void doInTransaction() {
         databaseOperator.registerOperation(DatabaseOperations.RequestType.CREATE_ACCOUNT, timestamp);
         databaseOperator.createAccount(usernames, password, initialDeposit);
+        // A reused name belongs to a new account, grants for a deleted co-holder must not carry over
+        usernames.forEach(authorizations::revoke);
       }
     }.yield();
   }
@@ -69,9 +104,9 @@ public final class DatabaseManager {
       @Override
       public void doInTransaction() {
         databaseOperator.registerOperation(DatabaseOperations.RequestType.DELETE_ACCOUNT, timestamp);
-        if (databaseOperator.checkPassword(username, password))
-          throw new WrongPasswordException();
+        checkPassword(username, password);
         databaseOperator.deleteAccount(username);
+        authorizations.revoke(username);
       }
     }.yield();
   }
@@ -81,8 +116,7 @@ public final class DatabaseManager {
       @Override
       public void doInTransaction() {
         databaseOperator.registerOperation(DatabaseOperations.RequestType.BALANCE, timestamp);
-        if (databaseOperator.checkPassword(username, password))
-          throw new WrongPasswordException();
+        checkPassword(username, password);
         setTransactionYield(databaseOperator.balance(username));
       }
     }.yield();
@@ -93,13 +127,35 @@ public final class DatabaseManager {
       @Override
       public void doInTransaction() {
         databaseOperator.registerOperation(DatabaseOperations.RequestType.GET_MOVEMENTS, timestamp);
-        if (databaseOperator.checkPassword(username, password))
-          throw new WrongPasswordException();
+        checkPassword(username, password);
         setTransactionYield(databaseOperator.getMovements(username));
       }
     }.yield();
   }
 
+  public MovementPageDto getMovements(String username, byte[] password, int offset, int pageSize,
+      OffsetDateTime timestamp) {
+    return new SimpleDatabaseTransaction<MovementPageDto>() {
+      @Override
+      public void doInTransaction() {
+        databaseOperator.registerOperation(DatabaseOperations.RequestType.GET_MOVEMENTS, timestamp);
+        checkPassword(username, password);
+        setTransactionYield(databaseOperator.getMovements(username, offset, pageSize));
+      }
+    }.yield();
+  }
+
+  // Later pages of a stream the first page already registered, each in its own short transaction
+  public MovementPageDto nextMovements(String username, byte[] password, int offset, int pageSize) {
+    return new SimpleDatabaseTransaction<MovementPageDto>() {
+      @Override
+      public void doInTransaction() {
+        checkPassword(username, password);
+        setTransactionYield(databaseOperator.getMovements(username, offset, pageSize));
+      }
+    }.yield();
+  }
+
   @Deprecated
   public void addExpense(String username, byte[] password, LocalDateTime date, BigDecimal amount, String description,
       OffsetDateTime timestamp) {
@@ -107,8 +163,7 @@ public final class DatabaseManager {
       @Override
       public void doInTransaction() {
         databaseOperator.registerOperation(DatabaseOperations.RequestType.ADD_EXPENSE, timestamp);
-        if (databaseOperator.checkPassword(username, password))
-          throw new WrongPasswordException();
+        checkPassword(username, password);
         databaseOperator.addExpense(username, date, amount, description);
       }
     }.yield();
@@ -120,8 +175,7 @@ public final class DatabaseManager {
       @Override
       public void doInTransaction() {
         databaseOperator.registerOperation(DatabaseOperations.RequestType.ORDER_PAYMENT, timestamp);
-        if (databaseOperator.checkPassword(username, password))
-          throw new WrongPasswordException();
+        checkPassword(username, password);
         databaseOperator.orderPayment(username, date, amount, description, recipient);
       }
     }.yield();
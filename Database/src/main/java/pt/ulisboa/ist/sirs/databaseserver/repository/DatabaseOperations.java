@@ -1,6 +1,7 @@
 package pt.ulisboa.ist.sirs.databaseserver.repository;
 
 import pt.ulisboa.ist.sirs.databaseserver.dto.MovementDto;
+import pt.ulisboa.ist.sirs.databaseserver.dto.MovementPageDto;
 
 import java.math.BigDecimal;
 import java.time.LocalDateTime;
@@ -25,6 +26,8 @@ public interface DatabaseOperations {
 
   List<MovementDto> getMovements(String username);
 
+  MovementPageDto getMovements(String username, int offset, int pageSize);
+
   @Deprecated
   void addExpense(String username, LocalDateTime date, BigDecimal amount, String description);
 
@@ -5,12 +5,21 @@ import org.hibernate.Transaction;
 import org.hibernate.cfg.Configuration;
 
 public final class HibernateUtil {
+  private static final String POOL_SIZE_VARIABLE = "database-pool-size";
+  private static final String POOL_SIZE_PROPERTY = "hibernate.hikari.maximumPoolSize";
+  private static int poolSize;
   private static SessionFactory sessionFactory = buildSessionFactory();
 
   private static SessionFactory buildSessionFactory() {
     try {
       if (sessionFactory == null) {
-        sessionFactory = new Configuration().configure("hibernate.cfg.xml").buildSessionFactory();
+        Configuration configuration = new Configuration().configure("hibernate.cfg.xml");
+        if (System.getenv(POOL_SIZE_VARIABLE) != null)
+          configuration.setProperty(
+            POOL_SIZE_PROPERTY, String.valueOf(Integer.parseInt(System.getenv(POOL_SIZE_VARIABLE)))
+          );
+        poolSize = Integer.parseInt(configuration.getProperty(POOL_SIZE_PROPERTY));
+        sessionFactory = configuration.buildSessionFactory();
       }
       return sessionFactory;
     } catch (Throwable ex) {
@@ -22,6 +31,10 @@ public final class HibernateUtil {
     return sessionFactory;
   }
 
+  public static int getPoolSize() {
+    return poolSize;
+  }
+
   public static void shutdown() {
     getSessionFactory().close();
   }
@@ -0,0 +1,7 @@
+package pt.ulisboa.ist.sirs.databaseserver.repository.exceptions;
+
+public class DatabaseBusyException extends RuntimeException {
+  public DatabaseBusyException() {
+    super("Interrupted while waiting for a database connection");
+  }
+}
@@ -0,0 +1,7 @@
+package pt.ulisboa.ist.sirs.databaseserver.repository.exceptions;
+
+public class InvalidCursorException extends RuntimeException {
+  public InvalidCursorException() {
+    super("Invalid movements cursor");
+  }
+}
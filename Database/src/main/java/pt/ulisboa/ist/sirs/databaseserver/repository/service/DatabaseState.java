@@ -3,11 +3,12 @@ package pt.ulisboa.ist.sirs.databaseserver.repository.service;
 import org.hibernate.SessionFactory;
 import pt.ulisboa.ist.sirs.databaseserver.dto.BankAccountDto;
 import pt.ulisboa.ist.sirs.databaseserver.dto.MovementDto;
+import pt.ulisboa.ist.sirs.databaseserver.dto.MovementPageDto;
 import pt.ulisboa.ist.sirs.databaseserver.dto.PaymentDto;
 import pt.ulisboa.ist.sirs.databaseserver.repository.DatabaseOperations;
 import pt.ulisboa.ist.sirs.databaseserver.repository.service.engine.*;
 import pt.ulisboa.ist.sirs.databaseserver.repository.service.engine.impl.*;
-import pt.ulisboa.ist.sirs.utils.exceptions.ReplayAttackException;
+import pt.ulisboa.ist.sirs.utils.ReplayCache;
 
 import java.math.BigDecimal;
 import java.time.LocalDateTime;
@@ -47,33 +48,17 @@ public class DatabaseState implements DatabaseOperations {
   private final BankAccountService bankAccountService;
   private final MovementService movementService;
   private final PaymentService paymentService;
-  private final Map<RequestType, Set<OffsetDateTime>> timestamps = new HashMap<>();
+  private final ReplayCache replayCache = new ReplayCache();
 
   private DatabaseState(DatabaseManagerBuilder builder) {
     this.bankAccountService = builder.bankAccountService;
     this.movementService = builder.movementService;
     this.paymentService = builder.paymentService;
-    for (RequestType type : RequestType.values())
-      timestamps.put(type, new HashSet<>());
-  }
-
-  private Set<OffsetDateTime> getTimestamps(RequestType type) {
-    return this.timestamps.get(type);
-  }
-
-  private void addTimestamp(RequestType type, OffsetDateTime timestamp) {
-    this.timestamps.get(type).add(timestamp);
-  }
-
-  private boolean oldTimestampString(RequestType type, OffsetDateTime timestamp) {
-    return getTimestamps(type).contains(timestamp);
   }
 
   @Override
   public void registerOperation(RequestType type, OffsetDateTime timestamp) {
-    if (oldTimestampString(type, timestamp))
-      throw new ReplayAttackException();
-    addTimestamp(type, timestamp);
+    replayCache.check(type.name(), timestamp);
   }
 
   @Override
@@ -100,6 +85,11 @@ public class DatabaseState implements DatabaseOperations {
     return movementService.getAccountMovements(username);
   }
 
+  @Override
+  public MovementPageDto getMovements(String username, int offset, int pageSize) {
+    return movementService.getAccountMovements(username, offset, pageSize);
+  }
+
   @Override
   @Deprecated
   public void addExpense(String username, LocalDateTime date, BigDecimal amount, String description) {
@@ -15,7 +15,7 @@ public class BankAccountHolderService {
         this.bankAccountHolderDAO = bankAccountHolderDAO;
     }
 
-    private static HolderDto toDto(BankAccountHolder holder) {
+    static HolderDto toDto(BankAccountHolder holder) {
         return new HolderDto(holder.getName(), holder.getAccountNumber(), holder.getNumber());
     }
 
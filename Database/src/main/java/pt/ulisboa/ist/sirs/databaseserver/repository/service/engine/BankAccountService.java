@@ -2,6 +2,7 @@ package pt.ulisboa.ist.sirs.databaseserver.repository.service.engine;
 
 import pt.ulisboa.ist.sirs.databaseserver.domain.BankAccount;
 import pt.ulisboa.ist.sirs.databaseserver.dto.BankAccountDto;
+import pt.ulisboa.ist.sirs.databaseserver.dto.HolderAccountDto;
 import pt.ulisboa.ist.sirs.databaseserver.dto.HolderDto;
 import pt.ulisboa.ist.sirs.databaseserver.repository.exceptions.BadHolderException;
 import pt.ulisboa.ist.sirs.databaseserver.repository.exceptions.NoSuchAccountException;
@@ -29,9 +30,24 @@ public class BankAccountService {
         a.getCurrency());
   }
 
+  private static HolderAccountDto toDto(BankAccountDAO.HolderAccount resolved) {
+    return new HolderAccountDto(BankAccountHolderService.toDto(resolved.holder()), toDto(resolved.account()));
+  }
+
+  // The join misses both for an unknown holder and for a holder whose account is gone, only the first is an error here
+  private Optional<BankAccountDAO.HolderAccount> findHolderAccount(String username) {
+    Optional<BankAccountDAO.HolderAccount> resolved = bankAccountDAO.findByHolderName(username);
+    if (resolved.isEmpty() && !bankAccountHolderService.checkExists(username))
+      throw new NoSuchAccountHolderException();
+    return resolved;
+  }
+
+  public Optional<HolderAccountDto> getHolderAccount(String username) {
+    return findHolderAccount(username).map(BankAccountService::toDto);
+  }
+
   public Optional<BankAccountDto> getByHolder(String username) {
-    return bankAccountDAO.findByNumber(bankAccountHolderService.getHolderByName(username)
-        .orElseThrow(NoSuchAccountHolderException::new).accountNumber()).map(BankAccountService::toDto);
+    return getHolderAccount(username).map(HolderAccountDto::account);
   }
 
   public BankAccountDto createAccount(List<String> holders, byte[] passwords, BigDecimal initialDeposit) {
@@ -47,26 +63,17 @@ public class BankAccountService {
   }
 
   public void deleteAccount(String username) {
-    UUID accountNumber = bankAccountHolderService.getHolderByName(username)
-        .orElseThrow(NoSuchAccountHolderException::new).accountNumber();
-    bankAccountHolderService.deleteHolderByAccountNumber(accountNumber);
-    bankAccountDAO.delete(bankAccountDAO.findByNumber(accountNumber).orElseThrow(NoSuchAccountException::new));
+    BankAccount account = findHolderAccount(username).orElseThrow(NoSuchAccountException::new).account();
+    bankAccountHolderService.deleteHolderByAccountNumber(account.getNumber());
+    bankAccountDAO.delete(account);
   }
 
   public boolean passwordCheck(String username, byte[] password) {
-    return !Arrays.equals(
-        bankAccountDAO.findByNumber(
-            bankAccountHolderService.getHolderByName(username).orElseThrow(NoSuchAccountHolderException::new)
-                .accountNumber())
-            .orElseThrow(NoSuchAccountException::new).getPassword(),
-        password);
+    return !Arrays.equals(getByHolder(username).orElseThrow(NoSuchAccountException::new).password(), password);
   }
 
   public BigDecimal getBalance(String username) {
-    return bankAccountDAO.findByNumber(
-        bankAccountHolderService.getHolderByName(username).orElseThrow(NoSuchAccountHolderException::new)
-            .accountNumber())
-        .orElseThrow(NoSuchAccountException::new).getBalance();
+    return getByHolder(username).orElseThrow(NoSuchAccountException::new).balance();
   }
 
   public void move(UUID accountFrom, UUID accountTo, BigDecimal amount) {
@@ -0,0 +1,28 @@
+package pt.ulisboa.ist.sirs.databaseserver.repository.service.engine;
+
+import pt.ulisboa.ist.sirs.databaseserver.dto.HolderAccountDto;
+import pt.ulisboa.ist.sirs.databaseserver.repository.exceptions.NoSuchAccountException;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Optional;
+import java.util.function.Function;
+
+// Lives for a single request, so each party it names is resolved exactly once however often it is asked for
+final class HolderAccountIdentityMap {
+  private final Map<String, HolderAccountDto> resolved = new HashMap<>();
+  private final Function<String, Optional<HolderAccountDto>> resolver;
+
+  HolderAccountIdentityMap(Function<String, Optional<HolderAccountDto>> resolver) {
+    this.resolver = resolver;
+  }
+
+  HolderAccountDto resolve(String username) {
+    HolderAccountDto party = resolved.get(username);
+    if (party == null) {
+      party = resolver.apply(username).orElseThrow(NoSuchAccountException::new);
+      resolved.put(username, party);
+    }
+    return party;
+  }
+}
@@ -8,14 +8,11 @@ import pt.ulisboa.ist.sirs.databaseserver.dto.OrderPaymentDto;
 import pt.ulisboa.ist.sirs.databaseserver.repository.exceptions.MovementWithNoDestinationAccountException;
 import pt.ulisboa.ist.sirs.databaseserver.repository.exceptions.MovementWithNoFromAccountException;
 import pt.ulisboa.ist.sirs.databaseserver.repository.exceptions.NoSuchAccountException;
-import pt.ulisboa.ist.sirs.databaseserver.repository.exceptions.NoSuchAccountHolderException;
 import pt.ulisboa.ist.sirs.databaseserver.repository.service.engine.impl.MovementDAO;
 
 import javax.transaction.Transactional;
 import java.math.BigDecimal;
 import java.time.LocalDateTime;
-import java.util.ArrayList;
-import java.util.Comparator;
 import java.util.List;
 import java.util.UUID;
 
@@ -52,21 +49,34 @@ public class MovementService {
     return toDto(movement);
   }
 
+  // Outgoing movements are reported with a negative amount
+  private static MovementDto toAccountDto(UUID number, Movement m) {
+    UUID from = m.getFromAccountNumber().orElseThrow(MovementWithNoFromAccountException::new);
+    if (from.equals(number))
+      return new MovementDto(m.getMovementNumber(), from, m.getMovementDate(), m.getAmount().negate(),
+          m.getDescription(), m.getCurrency());
+    return new MovementDto(m.getMovementNumber(),
+        m.getDestinationAccountNumber().orElseThrow(MovementWithNoDestinationAccountException::new),
+        m.getMovementDate(), m.getAmount(), m.getDescription(), m.getCurrency());
+  }
+
+  private UUID accountNumber(String username) {
+    return bankAccountService.getByHolder(username).orElseThrow(NoSuchAccountException::new).number();
+  }
+
   public List<MovementDto> getAccountMovements(String username) {
-    UUID number = bankAccountService.getByHolder(username).orElseThrow(NoSuchAccountHolderException::new).number();
-    List<MovementDto> movements = new ArrayList<>();
-    movements.addAll(movementDAO.findByAccountFrom(number).stream()
-        .map(m -> new MovementDto(m.getMovementNumber(),
-            m.getFromAccountNumber().orElseThrow(MovementWithNoFromAccountException::new), m.getMovementDate(),
-            m.getAmount().negate(), m.getDescription(), m.getCurrency()))
-        .toList());
-    movements.addAll(movementDAO.findByAccountTo(number).stream()
-        .map(m -> new MovementDto(m.getMovementNumber(),
-            m.getDestinationAccountNumber().orElseThrow(MovementWithNoDestinationAccountException::new),
-            m.getMovementDate(), m.getAmount(), m.getDescription(), m.getCurrency()))
-        .toList());
-    movements.sort(Comparator.comparing(MovementDto::date));
-    return movements;
+    UUID number = accountNumber(username);
+    return movementDAO.findByAccount(number).stream().map(m -> toAccountDto(number, m)).toList();
+  }
+
+  public MovementPageDto getAccountMovements(String username, int offset, int pageSize) {
+    UUID number = accountNumber(username);
+    // One extra row tells whether there is a next page
+    List<Movement> page = movementDAO.findByAccount(number, offset, pageSize + 1);
+    boolean hasNext = page.size() > pageSize;
+    return new MovementPageDto(
+        page.stream().limit(pageSize).map(m -> toAccountDto(number, m)).toList(),
+        hasNext ? offset + pageSize : 0);
   }
 
   public MovementDto addPayment(OrderPaymentDto paymentOrder) {
@@ -4,8 +4,6 @@ import pt.ulisboa.ist.sirs.databaseserver.domain.Payment;
 import pt.ulisboa.ist.sirs.databaseserver.dto.*;
 import pt.ulisboa.ist.sirs.databaseserver.dto.*;
 import pt.ulisboa.ist.sirs.databaseserver.repository.exceptions.IllegalPaymentOrderBalance;
-import pt.ulisboa.ist.sirs.databaseserver.repository.exceptions.NoSuchAccountException;
-import pt.ulisboa.ist.sirs.databaseserver.repository.exceptions.NoSuchAccountHolderException;
 import pt.ulisboa.ist.sirs.databaseserver.repository.exceptions.NotEnoughBalanceException;
 import pt.ulisboa.ist.sirs.databaseserver.repository.service.engine.impl.PaymentDAO;
 
@@ -72,20 +70,22 @@ public class PaymentService {
       String recipient) {
     if (amount.compareTo(BigDecimal.ZERO) < 0)
       throw new IllegalPaymentOrderBalance();
-    HolderDto holderDto = holderService.getHolderByName(username).orElseThrow(NoSuchAccountHolderException::new);
-    BankAccountDto bankAccount = bankAccountService.getByHolder(holderDto.name())
-        .orElseThrow(NoSuchAccountException::new);
+    HolderAccountIdentityMap parties = new HolderAccountIdentityMap(bankAccountService::getHolderAccount);
+    HolderAccountDto sender = parties.resolve(username);
+    HolderDto holderDto = sender.holder();
+    BankAccountDto bankAccount = sender.account();
     if (amount.compareTo(bankAccount.balance()) > 0)
       throw new NotEnoughBalanceException();
+    UUID recipientAccount = parties.resolve(recipient).holder().accountNumber();
 
     Payment payment = paymentDAO.getPaymentByAccountFromAndAccountToAndAmountAndDescription(
         holderDto.accountNumber(),
-        holderService.getHolderByName(recipient).orElseThrow(NoSuchAccountHolderException::new).accountNumber(),
+        recipientAccount,
         amount,
         description).orElseGet(() -> {
           Payment p = new Payment(
               holderDto.accountNumber(),
-              holderService.getHolderByName(recipient).orElseThrow(NoSuchAccountHolderException::new).accountNumber(),
+              recipientAccount,
               amount,
               date,
               description,
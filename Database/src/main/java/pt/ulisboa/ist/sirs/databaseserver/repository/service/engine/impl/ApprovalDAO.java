@@ -14,8 +14,8 @@ public class ApprovalDAO extends AbstractDAO<Approval, Long> {
   public List<Approval> getApprovalsByPaymentRef(UUID paymentRef) {
     return sessionFactory.getCurrentSession()
         .createQuery(
-            "FROM " + Approval.class.getSimpleName() + " a WHERE a.paymentRef=:paymentRef", Approval.class)
-        .setParameter("paymentRef", paymentRef)
+            "FROM " + Approval.class.getSimpleName() + " a WHERE a.paymentRefIndex=:paymentRefIndex", Approval.class)
+        .setParameter("paymentRefIndex", Approval.paymentRefIndex(paymentRef))
         .list();
   }
 }
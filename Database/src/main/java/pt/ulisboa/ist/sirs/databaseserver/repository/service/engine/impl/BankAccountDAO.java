@@ -2,25 +2,34 @@ package pt.ulisboa.ist.sirs.databaseserver.repository.service.engine.impl;
 
 import org.hibernate.SessionFactory;
 import pt.ulisboa.ist.sirs.databaseserver.domain.BankAccount;
+import pt.ulisboa.ist.sirs.databaseserver.domain.BankAccountHolder;
 
-import javax.persistence.NoResultException;
 import java.util.Optional;
 import java.util.UUID;
 
 public final class BankAccountDAO extends AbstractDAO<BankAccount, Long> {
+  public record HolderAccount(BankAccountHolder holder, BankAccount account) {}
 
   public BankAccountDAO(SessionFactory sessionFactory) {
     super(sessionFactory);
   }
 
   public Optional<BankAccount> findByNumber(UUID number) {
-    try {
-      return Optional.ofNullable(sessionFactory.getCurrentSession()
-          .createQuery("FROM " + BankAccount.class.getSimpleName() + " h WHERE h.number=:number", BankAccount.class)
-          .setParameter("number", number)
-          .getSingleResult());
-    } catch (NoResultException e) {
-      return Optional.empty();
-    }
+    return sessionFactory.getCurrentSession()
+        .bySimpleNaturalId(BankAccount.class)
+        .loadOptional(BankAccount.numberIndex(number));
+  }
+
+  // Holder and account in one query, joined on the blind index the holder keeps of its account
+  // Callers resolving the same party repeatedly within a request go through HolderAccountIdentityMap
+  public Optional<HolderAccount> findByHolderName(String name) {
+    return sessionFactory.getCurrentSession()
+        .createQuery("SELECT h, a FROM " + BankAccountHolder.class.getSimpleName() + " h, " +
+            BankAccount.class.getSimpleName() + " a " +
+            "WHERE h.nameIndex=:nameIndex " +
+            "AND a.numberIndex=h.accountNumberIndex", Object[].class)
+        .setParameter("nameIndex", BankAccountHolder.nameIndex(name))
+        .uniqueResultOptional()
+        .map(row -> new HolderAccount((BankAccountHolder) row[0], (BankAccount) row[1]));
   }
 }
@@ -3,7 +3,6 @@ package pt.ulisboa.ist.sirs.databaseserver.repository.service.engine.impl;
 import org.hibernate.SessionFactory;
 import pt.ulisboa.ist.sirs.databaseserver.domain.BankAccountHolder;
 
-import javax.persistence.NoResultException;
 import java.util.List;
 import java.util.Optional;
 import java.util.UUID;
@@ -14,38 +13,22 @@ public class BankAccountHolderDAO extends AbstractDAO<BankAccountHolder, Long> {
     super(sessionFactory);
   }
 
+  // Resolved through the natural id cache, a repeated lookup never reaches the database
   public Optional<BankAccountHolder> findByName(String name) {
-    try {
-      return Optional.ofNullable(
-          sessionFactory.getCurrentSession()
-              .createQuery("FROM " + BankAccountHolder.class.getSimpleName() + " a WHERE a.name=:name",
-                  BankAccountHolder.class)
-              .setParameter("name", name)
-              .getSingleResult());
-    } catch (NoResultException e) {
-      return Optional.empty();
-    }
+    return sessionFactory.getCurrentSession()
+        .bySimpleNaturalId(BankAccountHolder.class)
+        .loadOptional(BankAccountHolder.nameIndex(name));
   }
 
   public boolean checkExists(String name) {
-    try {
-      Optional<BankAccountHolder> holder = Optional.ofNullable(
-          sessionFactory.getCurrentSession()
-              .createQuery("FROM " + BankAccountHolder.class.getSimpleName() + " a WHERE a.name=:name",
-                  BankAccountHolder.class)
-              .setParameter("name", name)
-              .getSingleResult());
-      return holder.isPresent();
-    } catch (NoResultException e) {
-      return false;
-    }
+    return findByName(name).isPresent();
   }
 
   public List<BankAccountHolder> findByAccountNumber(UUID accountNumber) {
     return sessionFactory.getCurrentSession()
-        .createQuery("FROM " + BankAccountHolder.class.getSimpleName() + " h WHERE h.accountNumber=:accountNumber",
+        .createQuery("FROM " + BankAccountHolder.class.getSimpleName() + " h WHERE h.accountNumberIndex=:accountNumberIndex",
             BankAccountHolder.class)
-        .setParameter("accountNumber", accountNumber)
+        .setParameter("accountNumberIndex", BankAccountHolder.accountNumberIndex(accountNumber))
         .list();
   }
 }
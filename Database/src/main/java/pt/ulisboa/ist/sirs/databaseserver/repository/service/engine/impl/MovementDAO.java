@@ -1,6 +1,7 @@
 package pt.ulisboa.ist.sirs.databaseserver.repository.service.engine.impl;
 
 import org.hibernate.SessionFactory;
+import org.hibernate.query.Query;
 import pt.ulisboa.ist.sirs.databaseserver.domain.Movement;
 
 import java.util.List;
@@ -12,19 +13,21 @@ public final class MovementDAO extends AbstractDAO<Movement, Long> {
     super(sessionFactory);
   }
 
-  public List<Movement> findByAccountFrom(UUID number) {
+  // Both directions in one query, ordered by date with the movement number as tie-breaker
+  private Query<Movement> byAccountQuery(UUID number) {
     return sessionFactory.getCurrentSession()
         .createQuery(
-            "FROM " + Movement.class.getSimpleName() + " m WHERE m.accountFrom=:account", Movement.class)
-        .setParameter("account", number)
-        .list();
+            "FROM " + Movement.class.getSimpleName()
+                + " m WHERE m.accountFromIndex=:account OR m.accountToIndex=:account"
+                + " ORDER BY m.movementDate, m.movementNumber", Movement.class)
+        .setParameter("account", Movement.accountIndex(number));
   }
 
-  public List<Movement> findByAccountTo(UUID number) {
-    return sessionFactory.getCurrentSession()
-        .createQuery(
-            "FROM " + Movement.class.getSimpleName() + " m WHERE m.accountTo=:account", Movement.class)
-        .setParameter("account", number)
-        .list();
+  public List<Movement> findByAccount(UUID number) {
+    return byAccountQuery(number).list();
+  }
+
+  public List<Movement> findByAccount(UUID number, int offset, int limit) {
+    return byAccountQuery(number).setFirstResult(offset).setMaxResults(limit).list();
   }
 }
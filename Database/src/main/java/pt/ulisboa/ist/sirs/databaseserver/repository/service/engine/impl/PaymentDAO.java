@@ -20,12 +20,12 @@ public class PaymentDAO extends AbstractDAO<Payment, Long> implements Serializab
       return Optional.ofNullable(
           sessionFactory.getCurrentSession()
               .createQuery("FROM " + Payment.class.getSimpleName() + " p " +
-                  "WHERE p.accountFrom=:accountFrom " +
-                  "AND p.accountTo=:accountTo " +
+                  "WHERE p.accountFromIndex=:accountFrom " +
+                  "AND p.accountToIndex=:accountTo " +
                   "AND p.amount=:amount " +
                   "AND p.description=:description", Payment.class)
-              .setParameter("accountFrom", accountFrom)
-              .setParameter("accountTo", accountTo)
+              .setParameter("accountFrom", Payment.accountIndex(accountFrom))
+              .setParameter("accountTo", Payment.accountIndex(accountTo))
               .setParameter("amount", amount)
               .setParameter("description", description)
               .getSingleResult());
@@ -1,6 +1,7 @@
 package pt.ulisboa.ist.sirs.userclient;
 
 import pt.ulisboa.ist.sirs.userclient.grpc.UserService;
+import pt.ulisboa.ist.sirs.userclient.tools.BatchSecureDocument;
 import pt.ulisboa.ist.sirs.userclient.tools.SecureDocument;
 
 import java.time.LocalDateTime;
@@ -20,15 +21,20 @@ public class CommandParser {
   private static final String PROTECT = "protect";
   private static final String CHECK = "check";
   private static final String UNPROTECT = "unprotect";
+  private static final String PROTECT_ALL = "protectAll";
+  private static final String CHECK_ALL = "checkAll";
+  private static final String UNPROTECT_ALL = "unprotectAll";
   private static final String PAYMENT_ORDER = "orderPayment";
   private static final String EXIT = "exit";
 
   private final UserService userService;
   private final SecureDocument crypto;
+  private final BatchSecureDocument batch;
 
   public CommandParser(UserService userService, SecureDocument crypto) {
     this.userService = userService;
     this.crypto = crypto;
+    this.batch = new BatchSecureDocument(crypto);
   }
 
   public void parseInput() {
@@ -49,6 +55,9 @@ public class CommandParser {
           case PROTECT -> this.protect(command);
           case CHECK -> this.check(command);
           case UNPROTECT -> this.unprotect(command);
+          case PROTECT_ALL -> this.protectAll(command);
+          case CHECK_ALL -> this.checkAll(command);
+          case UNPROTECT_ALL -> this.unprotectAll(command);
           case HELP -> this.printUsage();
           case EXIT -> exit = true;
           default -> {
@@ -151,6 +160,38 @@ public class CommandParser {
     this.crypto.unprotect(inputFile, outputFile);
   }
 
+  private void protectAll(String[] command) {
+    if (command.length != 3) {
+      this.printUsage();
+      return;
+    }
+
+    String source = command[1];
+    String outputDirectory = command[2];
+    this.batch.protect(source, outputDirectory);
+  }
+
+  private void checkAll(String[] command) {
+    if (command.length != 2) {
+      this.printUsage();
+      return;
+    }
+
+    String source = command[1];
+    this.batch.check(source);
+  }
+
+  private void unprotectAll(String[] command) {
+    if (command.length != 3) {
+      this.printUsage();
+      return;
+    }
+
+    String source = command[1];
+    String outputDirectory = command[2];
+    this.batch.unprotect(source, outputDirectory);
+  }
+
   private void printUsage() {
     System.out.println("""
       Usage:
@@ -162,10 +203,14 @@ public class CommandParser {
       - protect <input_file> <output_file>
       - check <input_file>
       - unprotect <input_file> <output_file>
+      - protectAll <input_directory|glob> <output_directory>
+      - checkAll <input_directory|glob>
+      - unprotectAll <input_directory|glob> <output_directory>
       - help
       - exit
       Notes: (1) Each username is unique and is linked to only one account.
              (2) To process payments in accounts with multiple holders they all must place exactly the same order first.
+             (3) Batch commands process files in parallel, batch-threads sets how many at once.
       """);
   }
 }
\ No newline at end of file
@@ -5,13 +5,16 @@ import pt.ulisboa.ist.sirs.contract.authenticationserver.AuthenticationServer;
 import pt.ulisboa.ist.sirs.contract.databaseserver.DatabaseServer.*;
 import pt.ulisboa.ist.sirs.contract.enums.Enums;
 import pt.ulisboa.ist.sirs.cryptology.Base;
+import pt.ulisboa.ist.sirs.cryptology.CipherSuite;
 import pt.ulisboa.ist.sirs.userclient.grpc.crypto.AuthenticationServerCryptographicStub;
 import pt.ulisboa.ist.sirs.userclient.grpc.crypto.ClientCryptographicManager;
 import pt.ulisboa.ist.sirs.userclient.grpc.crypto.DatabaseServerCryptographicStub;
+import pt.ulisboa.ist.sirs.userclient.grpc.crypto.TicketGrantingTicketInterceptor;
 import pt.ulisboa.ist.sirs.cryptology.DiffieHellmanClient;
 import pt.ulisboa.ist.sirs.utils.Utils;
 import com.google.protobuf.ByteString;
 import pt.ulisboa.ist.sirs.utils.exceptions.TamperedMessageException;
+import pt.ulisboa.ist.sirs.utils.exceptions.UnsupportedCipherSuiteException;
 
 import java.io.*;
 import java.time.OffsetDateTime;
@@ -55,20 +58,27 @@ public class UserService {
   private final ClientCryptographicManager crypto;
   private final AuthenticationServerCryptographicStub authenticationServerServiceStub;
   private DatabaseServerCryptographicStub databaseServiceStub;
+  private final ChannelCredentials credentials;
+  private String databaseAddress;
+  private Integer databasePort;
   private final Logger logger;
 
   private UserService(UserServiceBuilder builder) {
     this.crypto = builder.crypto;
     this.debug = builder.debug;
+    this.credentials = builder.credentials;
     this.logger = Logger.getLogger("UserService");
     this.authenticationServerServiceStub = new AuthenticationServerCryptographicStub(
-      builder.authenticationServerChannel, crypto
+      ClientInterceptors.intercept(builder.authenticationServerChannel, new TicketGrantingTicketInterceptor(crypto)),
+      crypto
     );
-    this.diffieHellman();
-    this.authenticate(this.lookup(), OffsetDateTime.now().toString(), builder.credentials);
+    // A session left by a previous run is resumed before falling back to the authentication server
+    this.reconnect(OffsetDateTime.now().toString());
   }
 
   private void initializeStub(String address, Integer port, ChannelCredentials credentials) {
+    this.databaseAddress = address;
+    this.databasePort = port;
     Channel databaseChannel = Grpc.newChannelBuilderForAddress(
       address, port, credentials
     ).build();
@@ -77,15 +87,19 @@ public class UserService {
 
   public void diffieHellman() {
     try {
-      DiffieHellmanClient dhClient = new DiffieHellmanClient(crypto);
+      DiffieHellmanClient dhClient = new DiffieHellmanClient(crypto, CipherSuite.PREFERRED);
       // Client encodes his public key, and sends it to server.
       AuthenticationServer.DiffieHellmanExchangeResponse serverResponse = authenticationServerServiceStub.diffieHellmanExchange(
         AuthenticationServer.DiffieHellmanExchangeRequest.newBuilder().setClientPublic(ByteString.copyFrom(
           dhClient.diffieHellmanInitialize()
-      )).build());
+      )).setCipherSuiteValue(dhClient.getCipherSuite().getId()).build());
+      if (serverResponse.getCipherSuiteValue() != dhClient.getCipherSuite().getId())
+        throw new UnsupportedCipherSuiteException();
       dhClient.diffieHellmanFinish(
         serverResponse.getServerPublic().toByteArray(), serverResponse.getParameters().toByteArray()
       );
+      // Later service tickets are requested with this instead of a new key agreement
+      crypto.storeTicketGrantingTicket(serverResponse.getTicketGrantingTicket().toByteArray());
     } catch (StatusRuntimeException e) {
       logger.log(Level.WARNING, "RPC failed: {0}", e.getStatus());
     } catch (Exception e) {
@@ -103,7 +117,7 @@ public class UserService {
     return lookupResponse.getServersList().get(0).getQualifier();
   }
 
-  public void authenticate(String qualifier, String timestampString, ChannelCredentials credentials) {
+  public boolean authenticate(String qualifier, String timestampString, ChannelCredentials credentials) {
     try {
       // Needham-Schroeder step 1
       AuthenticationServer.AuthenticateResponse authTicket = authenticationServerServiceStub.authenticate(
@@ -138,17 +152,73 @@ public class UserService {
           .setClientChallenge(challenge)
           .setServerChallenge(authenticateDatabaseResponse.getServerChallenge() - 1)
           .setPublicKey(
-            ByteString.copyFrom(Utils.readBytesFromFile(ClientCryptographicManager.buildSelfPublicKeyPath()))
-      ).build());
+            ByteString.copyFrom(Utils.readBytesFromFile(ClientCryptographicManager.buildSelfPublicKeyPath())))
+          .addProtectionModes(ProtectionMode.HmacSha256)
+          .addProtectionModes(ProtectionMode.Signature)
+      .build());
 
       if(stillAliveResponse.getClientChallenge() != challenge + 1)
         throw new RuntimeException("Still alive challenge failed");
 
+      // RSA signatures are only needed for the handshake, switch to the negotiated session mode
+      crypto.initializeProtectionMode(stillAliveResponse.getProtectionMode());
+      crypto.storeResumptionTicket(stillAliveResponse.getResumptionTicket().toByteArray(), databaseAddress, databasePort);
+      return true;
+    } catch (StatusRuntimeException e) {
+      logger.log(Level.WARNING, "RPC failed: {0}", e.getStatus());
+    } catch (Exception e) {
+      logger.log(Level.SEVERE, Arrays.toString(e.getStackTrace()), e);
+    }
+    return false;
+  }
+
+  // Re-establishes the database session in one round trip, without the authentication server
+  public boolean resume(String timestampString) {
+    try {
+      Optional<ClientCryptographicManager.ResumptionTicket> ticket = crypto.getResumptionTicket();
+      if (ticket.isEmpty())
+        return false;
+      if (debug)
+        System.out.println("\tUserService: resuming database session");
+
+      initializeStub(ticket.get().address(), ticket.get().port(), credentials);
+      ResumeResponse resumeResponse = databaseServiceStub.resume(
+        ResumeRequest.newBuilder()
+          .setTicket(ByteString.copyFrom(ticket.get().ticket()))
+          .setTimestamp(timestampString)
+          .setProof(ByteString.copyFrom(crypto.resumptionProof(ticket.get().ticket(), timestampString)))
+      .build());
+
+      crypto.initializeProtectionMode(resumeResponse.getProtectionMode());
+      crypto.storeResumptionTicket(resumeResponse.getResumptionTicket().toByteArray(), databaseAddress, databasePort);
+      return true;
     } catch (StatusRuntimeException e) {
+      crypto.discardResumptionTicket();
       logger.log(Level.WARNING, "RPC failed: {0}", e.getStatus());
     } catch (Exception e) {
+      // A ticket that cannot be read or checked is as useless as a rejected one
+      crypto.discardResumptionTicket();
       logger.log(Level.SEVERE, Arrays.toString(e.getStackTrace()), e);
     }
+    return false;
+  }
+
+  // Falls back to a new service ticket, requested with the stored ticket-granting ticket, and then to the full
+  // handshake, when a ticket is missing or rejected
+  public void reconnect(String timestampString) {
+    if (resume(timestampString))
+      return;
+    if (crypto.getTicketGrantingTicket().isPresent()) {
+      try {
+        if (this.authenticate(this.lookup(), timestampString, credentials))
+          return;
+      } catch (StatusRuntimeException e) {
+        logger.log(Level.WARNING, "RPC failed: {0}", e.getStatus());
+      }
+      crypto.discardTicketGrantingTicket();
+    }
+    this.diffieHellman();
+    this.authenticate(this.lookup(), timestampString, credentials);
   }
 
   public void createAccount(List<String> usernames, List<String> passwords, String timestampString) {
@@ -224,22 +294,24 @@ public class UserService {
       if (debug)
         System.out.println("\tUserService: encoding show expenses request");
 
-      GetMovementsResponse getAccountMovementsResponse = databaseServiceStub.getMovements(
+      // Movements arrive in chunks and are printed as each one is received
+      Iterator<GetMovementsResponse> getAccountMovementsResponses = databaseServiceStub.streamMovements(
         GetMovementsRequest.newBuilder()
           .setName(username)
           .setPassword(ByteString.copyFrom(crypto.encryptPassword(password)))
           .setTimestamp(timestampString)
       .build());
 
-      for (GetMovementsResponse.Movement m: getAccountMovementsResponse.getMovementsList())
-        System.out.printf(
-          "Movement %s\n\tCurrency: %s\n\tDate: %s\n\tValue: %s\n\tDescription: %s\n",
-          m.getId(),
-          m.getCurrency(),
-          m.getDate(),
-          m.getValue(),
-          m.getDescription()
-      );
+      while (getAccountMovementsResponses.hasNext())
+        for (GetMovementsResponse.Movement m: getAccountMovementsResponses.next().getMovementsList())
+          System.out.printf(
+            "Movement %s\n\tCurrency: %s\n\tDate: %s\n\tValue: %s\n\tDescription: %s\n",
+            m.getId(),
+            m.getCurrency(),
+            m.getDate(),
+            m.getValue(),
+            m.getDescription()
+        );
     } catch (StatusRuntimeException e) {
       logger.log(Level.WARNING, "RPC failed: {0}", e.getStatus());
     } catch (Exception e) {
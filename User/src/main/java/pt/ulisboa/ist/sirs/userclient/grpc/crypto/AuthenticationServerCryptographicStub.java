@@ -4,41 +4,17 @@ import com.google.protobuf.Message;
 import io.grpc.CallOptions;
 import io.grpc.Channel;
 import io.grpc.MethodDescriptor;
-import io.grpc.Status;
 import io.grpc.stub.AbstractStub;
 import pt.ulisboa.ist.sirs.contract.authenticationserver.AuthenticationServer.*;
 import pt.ulisboa.ist.sirs.contract.authenticationserver.AuthenticationServerServiceGrpc;
-
-import java.io.ByteArrayInputStream;
-import java.io.IOException;
-import java.io.InputStream;
+import pt.ulisboa.ist.sirs.utils.ProtectedMarshaller;
 
 import static io.grpc.stub.ClientCalls.blockingUnaryCall;
 
 public class AuthenticationServerCryptographicStub extends AbstractStub<AuthenticationServerCryptographicStub> {
+  // Marshallers are built by field initializers before crypto is assigned, so it is read lazily
   public <T extends Message> MethodDescriptor.Marshaller<T> marshallerForAuth(T message) {
-    return new MethodDescriptor.Marshaller<>() {
-      @Override
-      public InputStream stream(T value) {
-        try {
-          return new ByteArrayInputStream(crypto.encryptAuth(value.toByteArray()));
-        } catch (Exception e) {
-          throw new RuntimeException(e);
-        }
-      }
-
-      @Override
-      @SuppressWarnings("unchecked")
-      public T parse(InputStream inputStream) {
-        try {
-          return (T) message.newBuilderForType().mergeFrom(crypto.decryptAuth(inputStream.readAllBytes())).build();
-        } catch (IOException e) {
-          throw Status.INTERNAL.withDescription("Invalid protobuf byte sequence").withCause(e).asRuntimeException();
-        } catch (Exception e) {
-          throw new RuntimeException(e);
-        }
-      }
-    };
+    return new ProtectedMarshaller<>(message, buffer -> crypto.encryptAuth(buffer), buffer -> crypto.decryptAuth(buffer));
   }
   final MethodDescriptor<DiffieHellmanExchangeRequest, DiffieHellmanExchangeResponse> METHOD_DIFFIE_HELLMAN =
     AuthenticationServerServiceGrpc.getDiffieHellmanExchangeMethod().toBuilder(
@@ -1,20 +1,28 @@
 package pt.ulisboa.ist.sirs.userclient.grpc.crypto;
 
 import pt.ulisboa.ist.sirs.cryptology.Base;
+import pt.ulisboa.ist.sirs.cryptology.CipherSuite;
 import pt.ulisboa.ist.sirs.cryptology.Operations;
 
+import javax.crypto.SecretKey;
+import java.nio.ByteBuffer;
 import java.security.NoSuchAlgorithmException;
+import java.security.PublicKey;
 
 public abstract class ClientCryptographicCore implements Base.CryptographicCore {
   protected static final String CLIENT_DIR = "resources/crypto/client/";
   protected static final String AUTH_DIR = "resources/crypto/client/";
   protected static final String SESSION_DIR = "resources/crypto/session/";
   protected static boolean checkByteArray(
-    byte[] message, String secretKeyPath, String publicKeyPath, String ivPath
+    byte[] message, String secretKeyPath, PublicKey publicKey, String ivPath
   ) throws Exception {
-    return Decrypter.check(
-      message, Base.readSecretKey(secretKeyPath), Base.readPublicKey(publicKeyPath), Base.readIv(ivPath)
-    );
+    return Decrypter.check(message, Base.readSecretKey(secretKeyPath), publicKey, Base.readIv(ivPath));
+  }
+
+  protected static byte[] verifyAndDecryptByteArray(
+    byte[] message, String secretKeyPath, PublicKey publicKey, String ivPath
+  ) throws Exception {
+    return Decrypter.verifyAndDecryptByteArray(message, Base.readSecretKey(secretKeyPath), publicKey, Base.readIv(ivPath));
   }
 
   protected static byte[] decryptByteArray(byte[] message, String secretKeyPath, String ivPath) throws Exception {
@@ -29,6 +37,22 @@ public abstract class ClientCryptographicCore implements Base.CryptographicCore
     );
   }
 
+  protected static byte[] encryptByteArrayWithMac(
+    byte[] message, String secretKeyPath, SecretKey macKey, String ivPath
+  ) throws Exception {
+    return Encrypter.encryptByteArrayWithMac(
+      message, Base.readSecretKey(secretKeyPath), macKey, Base.readIv(ivPath)
+    );
+  }
+
+  protected static byte[] decryptByteArrayWithMac(
+    byte[] message, String secretKeyPath, SecretKey macKey, String ivPath
+  ) throws Exception {
+    return Decrypter.decryptByteArrayWithMac(
+      message, Base.readSecretKey(secretKeyPath), macKey, Base.readIv(ivPath)
+    );
+  }
+
   protected static byte[] decryptByteArrayUnsigned(
     byte[] message, String secretKeyPath, String ivPath
   ) throws Exception {
@@ -45,6 +69,60 @@ public abstract class ClientCryptographicCore implements Base.CryptographicCore
     );
   }
 
+  protected static byte[] decryptByteArrayUnsigned(
+    byte[] message, String secretKeyPath, String ivPath, CipherSuite cipherSuite
+  ) throws Exception {
+    return cipherSuite.decrypt(Base.readSecretKey(secretKeyPath), message, Base.readIv(ivPath));
+  }
+
+  protected static byte[] encryptByteArrayUnsigned(
+    byte[] message, String secretKeyPath, String ivPath, CipherSuite cipherSuite
+  ) throws Exception {
+    return cipherSuite.encrypt(Base.readSecretKey(secretKeyPath), message, Base.readIv(ivPath));
+  }
+
+  protected static ByteBuffer verifyAndDecryptBuffer(
+    ByteBuffer message, String secretKeyPath, PublicKey publicKey, String ivPath
+  ) throws Exception {
+    return Decrypter.verifyAndDecryptBuffer(message, Base.readSecretKey(secretKeyPath), publicKey, Base.readIv(ivPath));
+  }
+
+  protected static ByteBuffer decryptBuffer(ByteBuffer message, String secretKeyPath, String ivPath) throws Exception {
+    return Decrypter.decryptBuffer(message, Base.readSecretKey(secretKeyPath), Base.readIv(ivPath));
+  }
+
+  protected static ByteBuffer encryptBuffer(
+    ByteBuffer message, String secretKeyPath, String privateKeyPath, String ivPath
+  ) throws Exception {
+    return Encrypter.encryptBuffer(
+      message, Base.readSecretKey(secretKeyPath), Base.readPrivateKey(privateKeyPath), Base.readIv(ivPath)
+    );
+  }
+
+  protected static ByteBuffer encryptBufferWithMac(
+    ByteBuffer message, String secretKeyPath, SecretKey macKey, String ivPath
+  ) throws Exception {
+    return Encrypter.encryptBufferWithMac(message, Base.readSecretKey(secretKeyPath), macKey, Base.readIv(ivPath));
+  }
+
+  protected static ByteBuffer decryptBufferWithMac(
+    ByteBuffer message, String secretKeyPath, SecretKey macKey, String ivPath
+  ) throws Exception {
+    return Decrypter.decryptBufferWithMac(message, Base.readSecretKey(secretKeyPath), macKey, Base.readIv(ivPath));
+  }
+
+  protected static ByteBuffer decryptBufferUnsigned(
+    ByteBuffer message, String secretKeyPath, String ivPath, CipherSuite cipherSuite
+  ) throws Exception {
+    return cipherSuite.decrypt(Base.readSecretKey(secretKeyPath), message, Base.readIv(ivPath));
+  }
+
+  protected static ByteBuffer encryptBufferUnsigned(
+    ByteBuffer message, String secretKeyPath, String ivPath, CipherSuite cipherSuite
+  ) throws Exception {
+    return cipherSuite.encrypt(Base.readSecretKey(secretKeyPath), message, Base.readIv(ivPath));
+  }
+
   protected static byte[] hash(byte[] message) {
     try {
       return Operations.hash(message);
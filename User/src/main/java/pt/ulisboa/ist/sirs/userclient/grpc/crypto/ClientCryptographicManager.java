@@ -1,15 +1,33 @@
 package pt.ulisboa.ist.sirs.userclient.grpc.crypto;
 
+import pt.ulisboa.ist.sirs.contract.databaseserver.DatabaseServer.ProtectionMode;
 import pt.ulisboa.ist.sirs.cryptology.Base;
+import pt.ulisboa.ist.sirs.cryptology.CipherSuite;
+import pt.ulisboa.ist.sirs.cryptology.IdentityCache;
+import pt.ulisboa.ist.sirs.cryptology.Operations;
 import pt.ulisboa.ist.sirs.utils.Utils;
 
-import java.io.ByteArrayInputStream;
+import javax.crypto.SecretKey;
 import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.ByteBuffer;
+import java.security.PublicKey;
 import java.security.cert.CertificateException;
-import java.security.cert.CertificateFactory;
-import java.security.cert.X509Certificate;
+import java.util.List;
+import java.util.Optional;
 
 public class ClientCryptographicManager extends ClientCryptographicCore implements Base.KeyManager, Base.AuthClient {
+  // A ticket is only worth anything to the database server that issued it
+  public record ResumptionTicket(byte[] ticket, String address, int port) {}
+
+  private volatile SecretKey clientMacKey;
+  private volatile SecretKey serverMacKey;
+  private volatile CipherSuite authCipherSuite = CipherSuite.DEFAULT;
+  private volatile byte[] ticketGrantingTicket;
+  private volatile boolean ticketGrantingTicketLoaded;
+  private volatile PublicKey sessionPublicKey;
+
   public ClientCryptographicManager() {
     super();
   }
@@ -41,10 +59,22 @@ public class ClientCryptographicManager extends ClientCryptographicCore implemen
     return AUTH_DIR + "iv";
   }
 
+  public static String buildTicketGrantingTicketPath() {
+    return AUTH_DIR + "ticketGrantingTicket";
+  }
+
   public static String buildSessionPublicKeyPath() {
     return SESSION_DIR + "publicKey";
   }
 
+  public static String buildResumptionTicketPath() {
+    return SESSION_DIR + "resumptionTicket";
+  }
+
+  public static String buildResumptionServerPath() {
+    return SESSION_DIR + "resumptionServer";
+  }
+
   public static  String buildSelfPublicKeyPath() {
     return CLIENT_DIR + "publicKey";
   }
@@ -54,34 +84,155 @@ public class ClientCryptographicManager extends ClientCryptographicCore implemen
   }
 
   public void validateSession(byte[] clientCert) throws CertificateException {
-    CertificateFactory certGen = CertificateFactory.getInstance("X.509");
-    X509Certificate cert = (X509Certificate) certGen.generateCertificate(
-            new ByteArrayInputStream(clientCert)
-    );
-    cert.checkValidity();
-    Utils.writeBytesToFile(cert.getPublicKey().getEncoded(), buildSessionPublicKeyPath());
+    PublicKey publicKey = IdentityCache.shared().peerKey(clientCert);
+    Utils.writeBytesToFile(publicKey.getEncoded(), buildSessionPublicKeyPath());
+    this.sessionPublicKey = publicKey;
+  }
+
+  // The key file is only read back when a session is resumed by a new process
+  private PublicKey getSessionPublicKey() throws Exception {
+    PublicKey publicKey = sessionPublicKey;
+    if (publicKey == null)
+      sessionPublicKey = publicKey = Base.readPublicKey(buildSessionPublicKeyPath());
+    return publicKey;
   }
 
   public void initializeSession(byte[] sessionKey, byte[] sessionIV) {
+    this.clientMacKey = null;
+    this.serverMacKey = null;
     Utils.writeBytesToFile(sessionKey, ClientCryptographicManager.buildSessionKeyPath());
     Utils.writeBytesToFile(sessionIV, ClientCryptographicManager.buildSessionIVPath());
   }
 
-  public void initializeAuth(byte[] secretKey, byte[] iv) {
+  public void initializeAuth(byte[] secretKey, byte[] iv, CipherSuite cipherSuite) {
     Utils.writeBytesToFile(secretKey, ClientCryptographicManager.buildAuthKeyPath());
     Utils.writeBytesToFile(iv, ClientCryptographicManager.buildAuthIVPath());
+    this.authCipherSuite = cipherSuite;
+  }
+
+  public void storeResumptionTicket(byte[] ticket, String address, int port) {
+    if (ticket.length == 0)
+      return;
+    Utils.writeBytesToFile(ticket, buildResumptionTicketPath());
+    Utils.writeBytesToFile((address + "\n" + port).getBytes(StandardCharsets.UTF_8), buildResumptionServerPath());
+  }
+
+  public Optional<ResumptionTicket> getResumptionTicket() throws IOException {
+    if (!new File(buildResumptionTicketPath()).exists() || !new File(buildResumptionServerPath()).exists())
+      return Optional.empty();
+    String[] server = new String(Utils.readBytesFromFile(buildResumptionServerPath()), StandardCharsets.UTF_8).split("\n");
+    if (server.length != 2)
+      return Optional.empty();
+    return Optional.of(new ResumptionTicket(
+      Utils.readBytesFromFile(buildResumptionTicketPath()), server[0], Integer.parseInt(server[1].trim())
+    ));
+  }
+
+  public void discardResumptionTicket() {
+    for (String path : List.of(buildResumptionTicketPath(), buildResumptionServerPath())) {
+      File file = new File(path);
+      if (file.exists() && !file.delete())
+        throw new RuntimeException("Could not discard resumption ticket");
+    }
+  }
+
+  // Proves possession of the ticket's session key without sending it
+  public byte[] resumptionProof(byte[] ticket, String timestamp) throws Exception {
+    return Operations.hmac(
+      Operations.deriveMacKey(Base.readSecretKey(buildSessionKeyPath()), Base.SESSION_RESUMPTION_LABEL),
+      ticket,
+      timestamp.getBytes()
+    );
+  }
+
+  // Kept next to the authentication channel's key and iv, with the cipher suite they were agreed under,
+  // so a later run can ask for service tickets without a new key agreement
+  public void storeTicketGrantingTicket(byte[] ticket) {
+    if (ticket.length == 0) {
+      discardTicketGrantingTicket();
+      return;
+    }
+    Utils.writeBytesToFile(
+      ByteBuffer.allocate(Integer.BYTES + ticket.length).putInt(authCipherSuite.getId()).put(ticket).array(),
+      buildTicketGrantingTicketPath()
+    );
+    this.ticketGrantingTicket = ticket.clone();
+    this.ticketGrantingTicketLoaded = true;
+  }
+
+  public Optional<byte[]> getTicketGrantingTicket() {
+    if (!ticketGrantingTicketLoaded)
+      loadTicketGrantingTicket();
+    return Optional.ofNullable(ticketGrantingTicket);
+  }
+
+  private synchronized void loadTicketGrantingTicket() {
+    if (ticketGrantingTicketLoaded)
+      return;
+    try {
+      if (new File(buildTicketGrantingTicketPath()).exists()) {
+        ByteBuffer stored = ByteBuffer.wrap(Utils.readBytesFromFile(buildTicketGrantingTicketPath()));
+        CipherSuite cipherSuite = CipherSuite.forId(stored.getInt());
+        byte[] ticket = new byte[stored.remaining()];
+        stored.get(ticket);
+        this.authCipherSuite = cipherSuite;
+        this.ticketGrantingTicket = ticket;
+      }
+    } catch (Exception e) {
+      // An unreadable ticket only costs a new key agreement
+      this.ticketGrantingTicket = null;
+    }
+    this.ticketGrantingTicketLoaded = true;
+  }
+
+  public void discardTicketGrantingTicket() {
+    this.ticketGrantingTicket = null;
+    this.ticketGrantingTicketLoaded = true;
+    File ticket = new File(buildTicketGrantingTicketPath());
+    if (ticket.exists() && !ticket.delete())
+      throw new RuntimeException("Could not discard ticket-granting ticket");
   }
 
   public byte[] encryptPassword(String password) {
     return hash(password.getBytes());
   }
 
+  // Messages are tagged with the client to server key and checked against the server to client one
+  public void initializeProtectionMode(ProtectionMode protectionMode) throws Exception {
+    if (protectionMode != ProtectionMode.HmacSha256) {
+      this.clientMacKey = null;
+      this.serverMacKey = null;
+      return;
+    }
+    SecretKey sessionKey = Base.readSecretKey(buildSessionKeyPath());
+    this.serverMacKey = Operations.deriveMacKey(sessionKey, Base.SESSION_MAC_SERVER_LABEL);
+    this.clientMacKey = Operations.deriveMacKey(sessionKey, Base.SESSION_MAC_CLIENT_LABEL);
+  }
+
   public byte[] encrypt(byte[] object) throws Exception {
+    SecretKey macKey = clientMacKey;
+    if (macKey != null)
+      return encryptByteArrayWithMac(object, buildSessionKeyPath(), macKey, buildSessionIVPath());
+    return encryptSigned(object);
+  }
+
+  public byte[] encryptSigned(byte[] object) throws Exception {
     return encryptByteArray(object, buildSessionKeyPath(), buildSelfPrivateKeyPath(), buildSessionIVPath());
   }
 
   public boolean check(byte[] object) throws Exception {
-    return !checkByteArray(object, buildSessionKeyPath(), buildSessionPublicKeyPath(), buildSessionIVPath());
+    return !checkByteArray(object, buildSessionKeyPath(), getSessionPublicKey(), buildSessionIVPath());
+  }
+
+  public byte[] verifyAndDecrypt(byte[] object) throws Exception {
+    SecretKey macKey = serverMacKey;
+    if (macKey != null)
+      return decryptByteArrayWithMac(object, buildSessionKeyPath(), macKey, buildSessionIVPath());
+    return verifyAndDecryptSigned(object);
+  }
+
+  public byte[] verifyAndDecryptSigned(byte[] object) throws Exception {
+    return verifyAndDecryptByteArray(object, buildSessionKeyPath(), getSessionPublicKey(), buildSessionIVPath());
   }
 
   public byte[] decrypt(byte[] object) throws Exception {
@@ -89,10 +240,44 @@ public class ClientCryptographicManager extends ClientCryptographicCore implemen
   }
 
   public byte[] decryptAuth(byte[] object) throws Exception {
-    return decryptByteArrayUnsigned(object, buildAuthKeyPath(), buildAuthIVPath());
+    return decryptByteArrayUnsigned(object, buildAuthKeyPath(), buildAuthIVPath(), authCipherSuite);
   }
 
   public byte[] encryptAuth(byte[] object) throws Exception {
-    return encryptByteArrayUnsigned(object, buildAuthKeyPath(), buildAuthIVPath());
+    return encryptByteArrayUnsigned(object, buildAuthKeyPath(), buildAuthIVPath(), authCipherSuite);
+  }
+
+  public ByteBuffer encrypt(ByteBuffer object) throws Exception {
+    SecretKey macKey = clientMacKey;
+    if (macKey != null)
+      return encryptBufferWithMac(object, buildSessionKeyPath(), macKey, buildSessionIVPath());
+    return encryptSigned(object);
+  }
+
+  public ByteBuffer encryptSigned(ByteBuffer object) throws Exception {
+    return encryptBuffer(object, buildSessionKeyPath(), buildSelfPrivateKeyPath(), buildSessionIVPath());
+  }
+
+  public ByteBuffer verifyAndDecrypt(ByteBuffer object) throws Exception {
+    SecretKey macKey = serverMacKey;
+    if (macKey != null)
+      return decryptBufferWithMac(object, buildSessionKeyPath(), macKey, buildSessionIVPath());
+    return verifyAndDecryptSigned(object);
+  }
+
+  public ByteBuffer verifyAndDecryptSigned(ByteBuffer object) throws Exception {
+    return verifyAndDecryptBuffer(object, buildSessionKeyPath(), getSessionPublicKey(), buildSessionIVPath());
+  }
+
+  public ByteBuffer decrypt(ByteBuffer object) throws Exception {
+    return decryptBuffer(object, buildSessionKeyPath(), buildSessionIVPath());
+  }
+
+  public ByteBuffer decryptAuth(ByteBuffer object) throws Exception {
+    return decryptBufferUnsigned(object, buildAuthKeyPath(), buildAuthIVPath(), authCipherSuite);
+  }
+
+  public ByteBuffer encryptAuth(ByteBuffer object) throws Exception {
+    return encryptBufferUnsigned(object, buildAuthKeyPath(), buildAuthIVPath(), authCipherSuite);
   }
 }
@@ -4,70 +4,29 @@ import com.google.protobuf.Message;
 import io.grpc.CallOptions;
 import io.grpc.Channel;
 import io.grpc.MethodDescriptor;
-import io.grpc.Status;
 import io.grpc.stub.AbstractStub;
 import pt.ulisboa.ist.sirs.contract.databaseserver.DatabaseServer;
 import pt.ulisboa.ist.sirs.contract.databaseserver.DatabaseServer.*;
 import pt.ulisboa.ist.sirs.contract.databaseserver.DatabaseServiceGrpc;
-import pt.ulisboa.ist.sirs.utils.exceptions.TamperedMessageException;
+import pt.ulisboa.ist.sirs.utils.ProtectedMarshaller;
 
-import java.io.ByteArrayInputStream;
-import java.io.IOException;
-import java.io.InputStream;
+import java.util.Iterator;
 
+import static io.grpc.stub.ClientCalls.blockingServerStreamingCall;
 import static io.grpc.stub.ClientCalls.blockingUnaryCall;
 
 public final class DatabaseServerCryptographicStub extends AbstractStub<DatabaseServerCryptographicStub> {
+  // Marshallers are built by field initializers before crypto is assigned, so it is read lazily
   public <T extends Message> MethodDescriptor.Marshaller<T> marshallerFor(T message) {
-    return new MethodDescriptor.Marshaller<>() {
-      @Override
-      public InputStream stream(T value) {
-        try {
-          return new ByteArrayInputStream(crypto.encrypt(value.toByteArray()));
-        } catch (Exception e) {
-          throw new RuntimeException(e);
-        }
-      }
-
-      @Override
-      @SuppressWarnings("unchecked")
-      public T parse(InputStream inputStream) {
-        try {
-          byte[] response = inputStream.readAllBytes();
-          if (crypto.check(response))
-            throw new TamperedMessageException();
-          return (T) message.newBuilderForType().mergeFrom(crypto.decrypt(response)).build();
-        } catch (IOException e) {
-          throw Status.INTERNAL.withDescription("Invalid protobuf byte sequence").withCause(e).asRuntimeException();
-        } catch (Exception e) {
-          throw new RuntimeException(e);
-        }
-      }
-    };
+    return new ProtectedMarshaller<>(message, buffer -> crypto.encrypt(buffer), buffer -> crypto.verifyAndDecrypt(buffer));
+  }
+  public <T extends Message> MethodDescriptor.Marshaller<T> marshallerForHandshake(T message) {
+    return new ProtectedMarshaller<>(
+      message, buffer -> crypto.encryptSigned(buffer), buffer -> crypto.verifyAndDecryptSigned(buffer)
+    );
   }
   public <T extends Message> MethodDescriptor.Marshaller<T> marshallerForAuth(T message) {
-    return new MethodDescriptor.Marshaller<>() {
-      @Override
-      public InputStream stream(T value) {
-        try {
-          return new ByteArrayInputStream(crypto.encrypt(value.toByteArray()));
-        } catch (Exception e) {
-          throw new RuntimeException(e);
-        }
-      }
-
-      @Override
-      @SuppressWarnings("unchecked")
-      public T parse(InputStream inputStream) {
-        try {
-          return (T) message.newBuilderForType().mergeFrom(crypto.decrypt(inputStream.readAllBytes())).build();
-        } catch (IOException e) {
-          throw Status.INTERNAL.withDescription("Invalid protobuf byte sequence").withCause(e).asRuntimeException();
-        } catch (Exception e) {
-          throw new RuntimeException(e);
-        }
-      }
-    };
+    return new ProtectedMarshaller<>(message, buffer -> crypto.encrypt(buffer), buffer -> crypto.decrypt(buffer));
   }
   final MethodDescriptor<AuthenticateRequest, AuthenticateResponse> METHOD_AUTHENTICATE =
     DatabaseServiceGrpc.getAuthenticateMethod().toBuilder(
@@ -76,8 +35,13 @@ public final class DatabaseServerCryptographicStub extends AbstractStub<Database
   ).build();
   final MethodDescriptor<StillAliveRequest, StillAliveResponse> METHOD_STILL_ALIVE =
     DatabaseServiceGrpc.getStillAliveMethod().toBuilder(
-      marshallerFor(StillAliveRequest.getDefaultInstance()),
-      marshallerFor(StillAliveResponse.getDefaultInstance())
+      marshallerForHandshake(StillAliveRequest.getDefaultInstance()),
+      marshallerForHandshake(StillAliveResponse.getDefaultInstance())
+  ).build();
+  final MethodDescriptor<ResumeRequest, ResumeResponse> METHOD_RESUME =
+    DatabaseServiceGrpc.getResumeMethod().toBuilder(
+      DatabaseServiceGrpc.getResumeMethod().getRequestMarshaller(),
+      marshallerForHandshake(ResumeResponse.getDefaultInstance())
   ).build();
   final MethodDescriptor<CreateAccountRequest, Ack> METHOD_CREATE_ACCOUNT =
     DatabaseServiceGrpc.getCreateAccountMethod().toBuilder(
@@ -99,6 +63,11 @@ public final class DatabaseServerCryptographicStub extends AbstractStub<Database
       marshallerFor(GetMovementsRequest.getDefaultInstance()),
       marshallerFor(GetMovementsResponse.getDefaultInstance())
   ).build();
+  final MethodDescriptor<GetMovementsRequest, GetMovementsResponse> METHOD_STREAM_MOVEMENTS =
+    DatabaseServiceGrpc.getStreamMovementsMethod().toBuilder(
+      marshallerFor(GetMovementsRequest.getDefaultInstance()),
+      marshallerFor(GetMovementsResponse.getDefaultInstance())
+  ).build();
   final MethodDescriptor<OrderPaymentRequest, Ack> METHOD_ORDER_PAYMENT =
     DatabaseServiceGrpc.getOrderPaymentMethod().toBuilder(
       marshallerFor(OrderPaymentRequest.getDefaultInstance()),
@@ -129,6 +98,10 @@ public final class DatabaseServerCryptographicStub extends AbstractStub<Database
     return blockingUnaryCall(getChannel(), METHOD_STILL_ALIVE, getCallOptions(), request);
   }
 
+  public ResumeResponse resume(ResumeRequest request) {
+    return blockingUnaryCall(getChannel(), METHOD_RESUME, getCallOptions(), request);
+  }
+
   public Ack createAccount(CreateAccountRequest request) {
     return blockingUnaryCall(getChannel(), METHOD_CREATE_ACCOUNT, getCallOptions(), request);
   }
@@ -145,6 +118,10 @@ public final class DatabaseServerCryptographicStub extends AbstractStub<Database
     return blockingUnaryCall(getChannel(), METHOD_GET_MOVEMENTS, getCallOptions(), request);
   }
 
+  public Iterator<GetMovementsResponse> streamMovements(GetMovementsRequest request) {
+    return blockingServerStreamingCall(getChannel(), METHOD_STREAM_MOVEMENTS, getCallOptions(), request);
+  }
+
   public Ack orderPayment(OrderPaymentRequest request) {
     return blockingUnaryCall(getChannel(), METHOD_ORDER_PAYMENT, getCallOptions(), request);
   }
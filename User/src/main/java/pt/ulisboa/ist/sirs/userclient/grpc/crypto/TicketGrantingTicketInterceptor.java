@@ -0,0 +1,28 @@
+package pt.ulisboa.ist.sirs.userclient.grpc.crypto;
+
+import io.grpc.*;
+import pt.ulisboa.ist.sirs.cryptology.Base;
+
+public class TicketGrantingTicketInterceptor implements ClientInterceptor {
+  private static final Metadata.Key<byte[]> TICKET_GRANTING_TICKET_HEADER =
+    Metadata.Key.of(Base.TICKET_GRANTING_TICKET_HEADER, Metadata.BINARY_BYTE_MARSHALLER);
+  private final ClientCryptographicManager crypto;
+
+  public TicketGrantingTicketInterceptor(ClientCryptographicManager crypto) {
+    this.crypto = crypto;
+  }
+
+  // Lets any authentication server instance find this client's channel keys, whatever connection it arrives on
+  @Override
+  public <ReqT, RespT> ClientCall<ReqT, RespT> interceptCall(
+    MethodDescriptor<ReqT, RespT> method, CallOptions callOptions, Channel next
+  ) {
+    return new ForwardingClientCall.SimpleForwardingClientCall<>(next.newCall(method, callOptions)) {
+      @Override
+      public void start(Listener<RespT> responseListener, Metadata headers) {
+        crypto.getTicketGrantingTicket().ifPresent(ticket -> headers.put(TICKET_GRANTING_TICKET_HEADER, ticket));
+        super.start(responseListener, headers);
+      }
+    };
+  }
+}
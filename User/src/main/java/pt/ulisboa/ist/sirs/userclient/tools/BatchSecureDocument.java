@@ -0,0 +1,127 @@
+package pt.ulisboa.ist.sirs.userclient.tools;
+
+import java.io.IOException;
+import java.nio.file.*;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.stream.Stream;
+
+public class BatchSecureDocument {
+  public static final String THREADS_VARIABLE = "batch-threads";
+
+  private final SecureDocument document;
+
+  @FunctionalInterface
+  private interface Operation {
+    boolean apply(Path file) throws Exception;
+  }
+
+  private record Outcome(Path file, long bytes, boolean successful, String failure) {}
+
+  public BatchSecureDocument(SecureDocument document) {
+    this.document = document;
+  }
+
+  public void protect(String source, String outputDirectory) {
+    Path output = Path.of(outputDirectory);
+    run("protect", source, output, file -> {
+      document.protectFile(file.toString(), output.resolve(file.getFileName()).toString());
+      return true;
+    });
+  }
+
+  public void check(String source) {
+    run("check", source, null, file -> document.checkFile(file.toString()));
+  }
+
+  public void unprotect(String source, String outputDirectory) {
+    Path output = Path.of(outputDirectory);
+    run("unprotect", source, output, file -> {
+      document.unprotectFile(file.toString(), output.resolve(file.getFileName()).toString());
+      return true;
+    });
+  }
+
+  private void run(String name, String source, Path outputDirectory, Operation operation) {
+    List<Path> files;
+    try {
+      files = resolve(source);
+      if (outputDirectory != null)
+        Files.createDirectories(outputDirectory);
+    } catch (IOException | IllegalArgumentException e) {
+      System.out.println(e.getMessage());
+      return;
+    }
+    if (files.isEmpty()) {
+      System.out.println("No files match " + source);
+      return;
+    }
+
+    long start = System.nanoTime();
+    List<Outcome> outcomes = process(files, operation);
+    report(name, outcomes, System.nanoTime() - start);
+  }
+
+  // Parallel streams started from inside a pool run on that pool, so the batch never touches the common one
+  private static List<Outcome> process(List<Path> files, Operation operation) {
+    ForkJoinPool pool = new ForkJoinPool(threads());
+    try {
+      return pool.submit(() -> files.parallelStream().map(file -> apply(file, operation)).toList()).get();
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+      throw new RuntimeException(e);
+    } catch (ExecutionException e) {
+      throw new RuntimeException(e.getCause());
+    } finally {
+      pool.shutdown();
+    }
+  }
+
+  private static Outcome apply(Path file, Operation operation) {
+    try {
+      long bytes = Files.size(file);
+      return operation.apply(file) ?
+        new Outcome(file, bytes, true, null) : new Outcome(file, bytes, false, "Check unsuccessful");
+    } catch (Exception e) {
+      return new Outcome(file, 0, false, e.getMessage() == null ? e.getClass().getSimpleName() : e.getMessage());
+    }
+  }
+
+  private static void report(String name, List<Outcome> outcomes, long elapsedNanos) {
+    long bytes = outcomes.stream().mapToLong(Outcome::bytes).sum();
+    List<Outcome> failures = outcomes.stream().filter(outcome -> !outcome.successful()).toList();
+    double seconds = Math.max(elapsedNanos, 1) / 1e9;
+    System.out.printf(
+      "%s: %d files, %.1f MiB in %.2f s (%.1f files/s, %.1f MiB/s), %d failed%n",
+      name, outcomes.size(), bytes / 1048576.0, seconds, outcomes.size() / seconds, bytes / 1048576.0 / seconds,
+      failures.size()
+    );
+    failures.forEach(outcome -> System.out.println("  " + outcome.file() + ": " + outcome.failure()));
+    System.out.println();
+  }
+
+  // A directory stands for every regular file directly in it, anything else is read as a glob over its parent
+  private static List<Path> resolve(String source) throws IOException {
+    Path path = Path.of(source);
+    if (Files.isDirectory(path))
+      return list(path, file -> true);
+
+    Path directory = path.toAbsolutePath().getParent();
+    if (directory == null || !Files.isDirectory(directory))
+      throw new IllegalArgumentException("No such directory: " + directory);
+    PathMatcher matcher = FileSystems.getDefault().getPathMatcher("glob:" + path.getFileName());
+    return list(directory, file -> matcher.matches(file.getFileName()));
+  }
+
+  private static List<Path> list(Path directory, PathMatcher filter) throws IOException {
+    try (Stream<Path> entries = Files.list(directory)) {
+      return entries.filter(Files::isRegularFile).filter(filter::matches).sorted().toList();
+    }
+  }
+
+  private static int threads() {
+    String threads = System.getenv(THREADS_VARIABLE);
+    return threads == null ? Runtime.getRuntime().availableProcessors() : Integer.parseInt(threads);
+  }
+}
@@ -2,10 +2,18 @@ package pt.ulisboa.ist.sirs.userclient.tools;
 
 import pt.ulisboa.ist.sirs.cryptology.Base;
 import pt.ulisboa.ist.sirs.cryptology.Security;
+import pt.ulisboa.ist.sirs.cryptology.StreamSecurity;
 import pt.ulisboa.ist.sirs.userclient.grpc.crypto.ClientCryptographicManager;
 import pt.ulisboa.ist.sirs.utils.Utils;
 
 import javax.crypto.SecretKey;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
 import java.security.PrivateKey;
 import java.security.PublicKey;
 
@@ -41,9 +49,7 @@ public class SecureDocument {
 
   public void protect(String inputFile, String outputFile) {
     try {
-      Utils.writeBytesToFile(
-          Security.protect(Utils.readBytesFromFile(inputFile), getSecretKey(), getPrivateKey(), getIV()),
-          outputFile);
+      protectFile(inputFile, outputFile);
     } catch (Exception e) {
       System.out.println(e.getMessage());
     }
@@ -51,8 +57,7 @@ public class SecureDocument {
 
   public boolean check(String inputFile) {
     try {
-      byte[] cryptogram = Utils.readBytesFromFile(inputFile);
-      return Security.check(cryptogram, getSecretKey(), getPublicKey(), getIV());
+      return checkFile(inputFile);
     } catch (Exception e) {
       System.out.println(e.getMessage());
       return false;
@@ -61,11 +66,75 @@ public class SecureDocument {
 
   public void unprotect(String inputFile, String outputFile) {
     try {
-      Utils.writeBytesToFile(
-          Security.unprotect(Utils.readBytesFromFile(inputFile), getSecretKey(), getIV()),
-          outputFile);
+      unprotectFile(inputFile, outputFile);
     } catch (Exception e) {
       System.out.println(e.getMessage());
     }
   }
+
+  // Keys are only read after construction, so one document can serve many threads at once
+  void protectFile(String inputFile, String outputFile) throws Exception {
+    requireDistinct(inputFile, outputFile);
+    try (FileChannel input = FileChannel.open(Path.of(inputFile), StandardOpenOption.READ)) {
+      writeOutput(outputFile, output -> StreamSecurity.protect(input, output, getSecretKey(), getPrivateKey()));
+    }
+  }
+
+  // Documents protected before segmenting are still whole cryptograms and are read the old way
+  boolean checkFile(String inputFile) throws Exception {
+    try (FileChannel input = FileChannel.open(Path.of(inputFile), StandardOpenOption.READ)) {
+      if (StreamSecurity.isSegmented(input))
+        return StreamSecurity.check(input, getSecretKey(), getPublicKey());
+      byte[] cryptogram = Utils.readBytesFromFile(inputFile);
+      return Security.check(cryptogram, getSecretKey(), getPublicKey(), getIV());
+    }
+  }
+
+  void unprotectFile(String inputFile, String outputFile) throws Exception {
+    requireDistinct(inputFile, outputFile);
+    try (FileChannel input = FileChannel.open(Path.of(inputFile), StandardOpenOption.READ)) {
+      if (!StreamSecurity.isSegmented(input)) {
+        byte[] document = Security.unprotect(Utils.readBytesFromFile(inputFile), getSecretKey(), getIV());
+        writeOutput(outputFile, output -> {
+          ByteBuffer buffer = ByteBuffer.wrap(document);
+          while (buffer.hasRemaining())
+            output.write(buffer);
+        });
+        return;
+      }
+      writeOutput(outputFile, output -> StreamSecurity.unprotect(input, output, getSecretKey()));
+    }
+  }
+
+  // Replacing the input would leave no copy of the document if anything went wrong afterwards
+  private static void requireDistinct(String inputFile, String outputFile) {
+    if (Path.of(inputFile).toAbsolutePath().normalize().equals(Path.of(outputFile).toAbsolutePath().normalize()))
+      throw new IllegalArgumentException("Input and output must be different files");
+  }
+
+  private interface OutputWriter {
+    void write(FileChannel output) throws Exception;
+  }
+
+  // Documents are written next to the output and only moved over it once complete, so a failure
+  // neither leaves a partial document behind nor destroys whatever the output held before
+  private static void writeOutput(String outputFile, OutputWriter writer) throws Exception {
+    Path output = Path.of(outputFile).toAbsolutePath();
+    Path temporary = Files.createTempFile(output.getParent(), "." + output.getFileName(), ".tmp");
+    try {
+      try (FileChannel channel = FileChannel.open(temporary, StandardOpenOption.WRITE)) {
+        writer.write(channel);
+      }
+      Files.move(temporary, output, StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+    } catch (Exception e) {
+      discard(temporary);
+      throw e;
+    }
+  }
+
+  private static void discard(Path temporary) {
+    try {
+      Files.deleteIfExists(temporary);
+    } catch (IOException ignored) {}
+  }
 }